@@ -0,0 +1,302 @@
+package org.treepluginframework.component_architecture;
+
+import java.util.*;
+
+/***
+ * The same graph as DAG, for when there are far too many nodes for a Node object with two LinkedHashSets and a UUID each
+ * (hundreds of thousands of per entity components).
+ *
+ * Every node gets a dense int id, found with a single identity lookup, and everything else is int arrays indexed by it:
+ * children and parents live in IntAdjacency (two inline slots per node, CSR once compact() has run), and the cycle check
+ * is the same Pearce-Kelly order DAG uses. Ids of removed nodes get reused.
+ *
+ * It only does structure. Event interests, keyed children and priority order stay in DAG.
+ * The dispatcher doesn't use it, it lives here so DAGFootprint and DAGTraversalBenchmark can measure it against DAG.
+ */
+public class CompactDAG {
+    public static final int NO_NODE = IntAdjacency.NONE;
+
+    private final IdentityIntMap ids;
+    private Object[] objects;
+    private int[] ords;
+    private int[] searchMarks;
+    private final IntAdjacency children;
+    private final IntAdjacency parents;
+
+    //Highest id handed out so far plus one, and freed ids below it.
+    private int idLimit = 0;
+    private int[] freeIds = new int[16];
+    private int freeCount = 0;
+
+    private int maxOrd = 0;
+    private int minOrd = 0;
+    private int searchMark = 0;
+    private int[] searchStack = new int[64];
+    private int[] forwardRegion = new int[64];
+    private int[] backwardRegion = new int[64];
+
+    public CompactDAG() {
+        this(1024);
+    }
+
+    public CompactDAG(int expectedNodes) {
+        int capacity = Math.max(16, expectedNodes);
+        ids = new IdentityIntMap(capacity);
+        objects = new Object[capacity];
+        ords = new int[capacity];
+        searchMarks = new int[capacity];
+        children = new IntAdjacency(capacity);
+        parents = new IntAdjacency(capacity);
+    }
+
+    //The node's id, or NO_NODE if it isn't in the graph.
+    public int idOf(Object node) {
+        return ids.get(node);
+    }
+
+    public Object nodeOf(int id) {
+        return (id >= 0 && id < idLimit) ? objects[id] : null;
+    }
+
+    public boolean containsNode(Object node) {
+        return ids.get(node) != IdentityIntMap.MISSING;
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public int addNode(Object node) {
+        return addNode(node, false);
+    }
+
+    private int addNode(Object node, boolean atFront) {
+        if (node == null) throw new IllegalArgumentException("Node cannot be null");
+        int id = ids.get(node);
+        if (id != IdentityIntMap.MISSING) return id;
+
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            if (idLimit == objects.length) grow(objects.length * 2);
+            id = idLimit++;
+        }
+        if (maxOrd == Integer.MAX_VALUE || minOrd == Integer.MIN_VALUE) renumber();
+        objects[id] = node;
+        ords[id] = atFront ? --minOrd : ++maxOrd;
+        searchMarks[id] = 0;
+        ids.put(node, id);
+        return id;
+    }
+
+    public void addEdge(Object from, Object to) {
+        if (to == null) throw new IllegalArgumentException("Destination of edge cannot be null");
+        if (from == null) {
+            addNode(to);
+            return;
+        }
+
+        int fromId = ids.get(from);
+        int toId = ids.get(to);
+        //Same as DAG, a brand new end can't close a cycle and gets an ord on the right side of the other one.
+        if (from == to || (fromId != IdentityIntMap.MISSING && toId != IdentityIntMap.MISSING && !orderEdge(fromId, toId))) {
+            throw new IllegalArgumentException("Adding edge from " + from + " to " + to + " would create a cycle.");
+        }
+        if (toId == IdentityIntMap.MISSING) toId = addNode(to, false);
+        if (fromId == IdentityIntMap.MISSING) fromId = addNode(from, true);
+
+        if (!children.contains(fromId, toId)) {
+            children.add(fromId, toId);
+            parents.add(toId, fromId);
+        }
+    }
+
+    public boolean removeEdge(Object from, Object to) {
+        int fromId = ids.get(from);
+        int toId = ids.get(to);
+        if (fromId == IdentityIntMap.MISSING || toId == IdentityIntMap.MISSING) return false;
+        if (!children.remove(fromId, toId)) return false;
+        parents.remove(toId, fromId);
+        return true;
+    }
+
+    public boolean removeNode(Object node) {
+        int id = ids.remove(node);
+        if (id == IdentityIntMap.MISSING) return false;
+
+        int[] buffer = new int[Math.max(children.upperBound(id), parents.upperBound(id))];
+        int count = children.copyTo(id, buffer, 0);
+        for (int i = 0; i < count; i++) parents.remove(buffer[i], id);
+        count = parents.copyTo(id, buffer, 0);
+        for (int i = 0; i < count; i++) children.remove(buffer[i], id);
+        children.clear(id);
+        parents.clear(id);
+
+        objects[id] = null;
+        if (freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        freeIds[freeCount++] = id;
+        return true;
+    }
+
+    public int childCount(int id) {
+        return children.count(id);
+    }
+
+    public int parentCount(int id) {
+        return parents.count(id);
+    }
+
+    /***
+     * Copies the ids of the node's children into dest starting at pos and returns how many there were.
+     * dest needs at least childCount(id) free slots. Nothing is allocated, so a traversal can keep its own int stack.
+     */
+    public int copyChildren(int id, int[] dest, int pos) {
+        return children.copyTo(id, dest, pos);
+    }
+
+    public int copyParents(int id, int[] dest, int pos) {
+        return parents.copyTo(id, dest, pos);
+    }
+
+    //Same as DAG.getChildren, for code that wants objects. Allocates, the int versions above don't.
+    public List<Object> getChildren(Object node) {
+        return objectsOf(ids.get(node), children);
+    }
+
+    public List<Object> getParents(Object node) {
+        return objectsOf(ids.get(node), parents);
+    }
+
+    private List<Object> objectsOf(int id, IntAdjacency adjacency) {
+        if (id == IdentityIntMap.MISSING) return Collections.emptyList();
+        int[] buffer = new int[adjacency.upperBound(id)];
+        int count = adjacency.copyTo(id, buffer, 0);
+        List<Object> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) result.add(objects[buffer[i]]);
+        return result;
+    }
+
+    /***
+     * Packs every edge into CSR arrays and throws away the per node delta and removed edges. Worth calling once a big graph
+     * is built, or after lots of removals. Adding edges afterwards is fine, they go back into the delta until the next compact().
+     */
+    public void compact() {
+        children.compact(idLimit);
+        parents.compact(idLimit);
+    }
+
+    /***
+     * Rough bytes held by the graph's own arrays (not the node objects themselves), for comparing against DAG.
+     * Assumes compressed references.
+     */
+    public long estimatedBytes() {
+        return ids.estimatedBytes() + (16L + 4L * objects.length) + (16L + 4L * ords.length) + (16L + 4L * searchMarks.length)
+                + (16L + 4L * freeIds.length) + children.estimatedBytes() + parents.estimatedBytes();
+    }
+
+    private void grow(int capacity) {
+        objects = Arrays.copyOf(objects, capacity);
+        ords = Arrays.copyOf(ords, capacity);
+        searchMarks = Arrays.copyOf(searchMarks, capacity);
+        children.grow(capacity);
+        parents.grow(capacity);
+    }
+
+    //Same as DAG.orderEdge, on ids.
+    private boolean orderEdge(int fromId, int toId) {
+        int lower = ords[toId];
+        int upper = ords[fromId];
+        if (upper < lower) return true;
+
+        int mark = ++searchMark;
+        if (mark == 0) {
+            Arrays.fill(searchMarks, 0);
+            mark = searchMark = 1;
+        }
+
+        int forwardCount = 0;
+        int stackSize = 0;
+        searchMarks[toId] = mark;
+        searchStack[stackSize++] = toId;
+        while (stackSize > 0) {
+            int current = searchStack[--stackSize];
+            forwardRegion = ensure(forwardRegion, forwardCount + 1);
+            forwardRegion[forwardCount++] = current;
+
+            searchStack = ensure(searchStack, stackSize + children.upperBound(current));
+            int found = children.copyTo(current, searchStack, stackSize);
+            //Children get copied straight onto the stack, then the ones that shouldn't be searched get dropped.
+            int kept = stackSize;
+            for (int i = stackSize; i < stackSize + found; i++) {
+                int child = searchStack[i];
+                if (child == fromId) return false;
+                if (searchMarks[child] != mark && ords[child] < upper) {
+                    searchMarks[child] = mark;
+                    searchStack[kept++] = child;
+                }
+            }
+            stackSize = kept;
+        }
+
+        int backwardCount = 0;
+        searchMarks[fromId] = mark;
+        searchStack[stackSize++] = fromId;
+        while (stackSize > 0) {
+            int current = searchStack[--stackSize];
+            backwardRegion = ensure(backwardRegion, backwardCount + 1);
+            backwardRegion[backwardCount++] = current;
+
+            searchStack = ensure(searchStack, stackSize + parents.upperBound(current));
+            int found = parents.copyTo(current, searchStack, stackSize);
+            int kept = stackSize;
+            for (int i = stackSize; i < stackSize + found; i++) {
+                int parent = searchStack[i];
+                if (searchMarks[parent] != mark && ords[parent] > lower) {
+                    searchMarks[parent] = mark;
+                    searchStack[kept++] = parent;
+                }
+            }
+            stackSize = kept;
+        }
+
+        sortByOrd(forwardRegion, forwardCount);
+        sortByOrd(backwardRegion, backwardCount);
+        int[] pooled = new int[forwardCount + backwardCount];
+        for (int i = 0; i < backwardCount; i++) pooled[i] = ords[backwardRegion[i]];
+        for (int i = 0; i < forwardCount; i++) pooled[backwardCount + i] = ords[forwardRegion[i]];
+        Arrays.sort(pooled);
+        for (int i = 0; i < backwardCount; i++) ords[backwardRegion[i]] = pooled[i];
+        for (int i = 0; i < forwardCount; i++) ords[forwardRegion[i]] = pooled[backwardCount + i];
+        return true;
+    }
+
+    //Packs ord and id into a long so a plain primitive sort does it.
+    private void sortByOrd(int[] region, int count) {
+        long[] keyed = new long[count];
+        for (int i = 0; i < count; i++) {
+            keyed[i] = ((long) ords[region[i]] << 32) | (region[i] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(keyed);
+        for (int i = 0; i < count; i++) {
+            region[i] = (int) keyed[i];
+        }
+    }
+
+    private void renumber() {
+        long[] keyed = new long[ids.size()];
+        int count = 0;
+        for (int id = 0; id < idLimit; id++) {
+            if (objects[id] != null) keyed[count++] = ((long) ords[id] << 32) | id;
+        }
+        Arrays.sort(keyed, 0, count);
+        for (int i = 0; i < count; i++) {
+            ords[(int) keyed[i]] = i;
+        }
+        minOrd = 0;
+        maxOrd = count - 1;
+    }
+
+    private static int[] ensure(int[] array, int needed) {
+        return needed <= array.length ? array : Arrays.copyOf(array, Math.max(needed, array.length * 2));
+    }
+}
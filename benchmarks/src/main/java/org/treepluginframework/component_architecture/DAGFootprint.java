@@ -0,0 +1,74 @@
+package org.treepluginframework.component_architecture;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.SplittableRandom;
+
+/***
+ * Heap bytes per node for DAG and CompactDAG holding the same random tree (every node under a random earlier one).
+ * The node objects are allocated before the first measurement, so only the graph's own overhead counts.
+ * Not a JMH benchmark, run it on its own:
+ *     java -Xmx4g -cp benchmarks/target/benchmarks.jar org.treepluginframework.component_architecture.DAGFootprint 100000 1000000
+ */
+public class DAGFootprint {
+
+    public static void main(String[] args){
+        int[] sizes = args.length == 0 ? new int[]{10_000, 100_000, 1_000_000} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        for (int size : sizes) {
+            Object[] nodes = nodes(size);
+
+            long before = usedHeap();
+            DAG dag = new DAG();
+            fill(dag, nodes, new SplittableRandom(42));
+            long dagBytes = usedHeap() - before;
+            System.out.printf("%,d nodes  DAG:                %6.1f bytes/node%n", size, (double) dagBytes / size);
+            dag = null;
+
+            before = usedHeap();
+            CompactDAG compact = new CompactDAG(size);
+            fill(compact, nodes, new SplittableRandom(42));
+            long compactBytes = usedHeap() - before;
+            System.out.printf("%,d nodes  CompactDAG:         %6.1f bytes/node (estimated %.1f)%n", size, (double) compactBytes / size, (double) compact.estimatedBytes() / size);
+
+            compact.compact();
+            compactBytes = usedHeap() - before;
+            System.out.printf("%,d nodes  CompactDAG (CSR):   %6.1f bytes/node (estimated %.1f)%n", size, (double) compactBytes / size, (double) compact.estimatedBytes() / size);
+            compact = null;
+        }
+    }
+
+    static Object[] nodes(int size){
+        Object[] nodes = new Object[size];
+        for (int i = 0; i < size; i++) {
+            nodes[i] = new Object();
+        }
+        return nodes;
+    }
+
+    //Node 0 is the root, every other node goes under a random earlier one. Same seed, same tree.
+    static void fill(DAG graph, Object[] nodes, SplittableRandom random){
+        graph.addNode(nodes[0]);
+        for (int i = 1; i < nodes.length; i++) {
+            graph.addEdge(nodes[random.nextInt(i)], nodes[i]);
+        }
+    }
+
+    static void fill(CompactDAG graph, Object[] nodes, SplittableRandom random){
+        graph.addNode(nodes[0]);
+        for (int i = 1; i < nodes.length; i++) {
+            graph.addEdge(nodes[random.nextInt(i)], nodes[i]);
+        }
+    }
+
+    private static long usedHeap(){
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
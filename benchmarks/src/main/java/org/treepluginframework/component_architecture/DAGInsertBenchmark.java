@@ -0,0 +1,61 @@
+package org.treepluginframework.component_architecture;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * DAG.addEdge on a graph that already has size nodes (a random tree, every node under a random earlier one).
+ * attachLeaf is what registering runtime children does, a new node under an existing one.
+ * randomEdge adds an edge between two existing nodes, half the time against the topological order so the cycle check has to search,
+ * and some of those get rejected as cycles.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class DAGInsertBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    private DAG graph;
+    private Object[] nodes;
+    private SplittableRandom random;
+    long rejected;
+
+    //Rebuilt every iteration, the benchmarks keep adding to it.
+    @Setup(Level.Iteration)
+    public void setup(){
+        graph = new DAG();
+        nodes = new Object[size];
+        random = new SplittableRandom(42);
+        nodes[0] = new Object();
+        graph.addNode(nodes[0]);
+        for (int i = 1; i < size; i++) {
+            nodes[i] = new Object();
+            graph.addEdge(nodes[random.nextInt(i)], nodes[i]);
+        }
+    }
+
+    @Benchmark
+    public DAG attachLeaf(){
+        graph.addEdge(nodes[random.nextInt(size)], new Object());
+        return graph;
+    }
+
+    @Benchmark
+    public DAG randomEdge(){
+        Object from = nodes[random.nextInt(size)];
+        Object to = nodes[random.nextInt(size)];
+        try {
+            graph.addEdge(from, to);
+        } catch (IllegalArgumentException e) {
+            rejected++;
+        }
+        return graph;
+    }
+}
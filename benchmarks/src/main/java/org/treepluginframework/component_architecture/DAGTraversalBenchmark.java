@@ -0,0 +1,82 @@
+package org.treepluginframework.component_architecture;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * A full depth first walk from the root of a random tree of size nodes, counting what it reaches.
+ * dag is DAG.getChildren, compactDelta is CompactDAG straight after building (inline slots and overflow arrays),
+ * compactCsr is the same graph after compact().
+ * Bytes per node for the same graphs is DAGFootprint.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class DAGTraversalBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    private DAG dag;
+    private CompactDAG compactDelta;
+    private CompactDAG compactCsr;
+    private Object root;
+    private int[] stack;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        Object[] nodes = DAGFootprint.nodes(size);
+        root = nodes[0];
+        dag = new DAG();
+        compactDelta = new CompactDAG(size);
+        compactCsr = new CompactDAG(size);
+        DAGFootprint.fill(dag, nodes, new SplittableRandom(42));
+        DAGFootprint.fill(compactDelta, nodes, new SplittableRandom(42));
+        DAGFootprint.fill(compactCsr, nodes, new SplittableRandom(42));
+        compactCsr.compact();
+        stack = new int[size];
+    }
+
+    @Benchmark
+    public int dag(){
+        ArrayDeque<Object> toVisit = new ArrayDeque<>();
+        toVisit.push(root);
+        int visited = 0;
+        while (!toVisit.isEmpty()) {
+            Object current = toVisit.pop();
+            visited++;
+            for (Object child : dag.getChildren(current)) {
+                toVisit.push(child);
+            }
+        }
+        return visited;
+    }
+
+    @Benchmark
+    public int compactDelta(){
+        return walk(compactDelta);
+    }
+
+    @Benchmark
+    public int compactCsr(){
+        return walk(compactCsr);
+    }
+
+    private int walk(CompactDAG graph){
+        int size = 0;
+        stack[size++] = graph.idOf(root);
+        int visited = 0;
+        while (size > 0) {
+            int current = stack[--size];
+            visited++;
+            size += graph.copyChildren(current, stack, size);
+        }
+        return visited;
+    }
+}
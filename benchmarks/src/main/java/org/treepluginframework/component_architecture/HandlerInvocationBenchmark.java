@@ -0,0 +1,97 @@
+package org.treepluginframework.component_architecture;
+
+import org.openjdk.jmh.annotations.*;
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.events.EventAdapter;
+import org.treepluginframework.events.IEvent;
+import org.treepluginframework.events.NativeEventAdapter;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Calling a single EventSubscription method on a class that was registered at runtime (never annotation processed).
+ * reflective is what TPFEventDispatcher used to do for these, runtime is the LambdaMetafactory path from RuntimeInvokers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HandlerInvocationBenchmark {
+
+    public static class PingEvent extends IEvent {
+    }
+
+    public static class Subscriber {
+        long count;
+
+        @EventSubscription
+        public void ping(PingEvent event){
+            count++;
+        }
+    }
+
+    private static class HiddenSubscriber {
+        long count;
+
+        @EventSubscription
+        private void ping(PingEvent event, NativeEventAdapter adapter){
+            count++;
+        }
+    }
+
+    private final Subscriber subscriber = new Subscriber();
+    private final HiddenSubscriber hiddenSubscriber = new HiddenSubscriber();
+    private final EventAdapter<IEvent> adapter = new NativeEventAdapter(new PingEvent());
+
+    private HandlerHolder reflective;
+    private HandlerHolder reflectiveHidden;
+    private HandlerHolder runtime;
+    private HandlerHolder runtimeHidden;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        Method ping = Subscriber.class.getDeclaredMethod("ping", PingEvent.class);
+        ping.setAccessible(true);
+        reflective = new HandlerHolder(new ReflectiveInvoker(ping, false), 0, 0, false, false, false);
+
+        Method hiddenPing = HiddenSubscriber.class.getDeclaredMethod("ping", PingEvent.class, NativeEventAdapter.class);
+        hiddenPing.setAccessible(true);
+        reflectiveHidden = new HandlerHolder(new ReflectiveInvoker(hiddenPing, true), 0, 0, true, false, false);
+
+        runtime = RuntimeInvokers.handlersFor(Subscriber.class).get(PingEvent.class);
+        runtimeHidden = RuntimeInvokers.handlersFor(HiddenSubscriber.class).get(PingEvent.class);
+    }
+
+    @Benchmark
+    public long direct(){
+        subscriber.ping((PingEvent) adapter.getEvent());
+        return subscriber.count;
+    }
+
+    @Benchmark
+    public long reflective(){
+        reflective.invoke(subscriber, adapter);
+        return subscriber.count;
+    }
+
+    @Benchmark
+    public long runtime(){
+        runtime.invoke(subscriber, adapter);
+        return subscriber.count;
+    }
+
+    @Benchmark
+    public long reflectivePrivateWithAdapter(){
+        reflectiveHidden.invoke(hiddenSubscriber, adapter);
+        return hiddenSubscriber.count;
+    }
+
+    @Benchmark
+    public long runtimePrivateWithAdapter(){
+        runtimeHidden.invoke(hiddenSubscriber, adapter);
+        return hiddenSubscriber.count;
+    }
+}
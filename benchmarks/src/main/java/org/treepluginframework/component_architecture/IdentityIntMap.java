@@ -0,0 +1,102 @@
+package org.treepluginframework.component_architecture;
+
+/***
+ * Object -> int by reference, open addressing over two flat arrays. Same job as an IdentityHashMap<Object, Integer>,
+ * without a boxed Integer or an entry per key.
+ */
+final class IdentityIntMap {
+    static final int MISSING = -1;
+
+    private Object[] keys;
+    private int[] values;
+    private int size;
+
+    IdentityIntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new Object[capacity];
+        values = new int[capacity];
+    }
+
+    int get(Object key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        Object current;
+        while ((current = keys[i]) != null) {
+            if (current == key) return values[i];
+            i = (i + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    void put(Object key, int value) {
+        if ((size + 1) * 2 > keys.length) resize(keys.length * 2);
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        Object current;
+        while ((current = keys[i]) != null) {
+            if (current == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    //Shifts the rest of the probe run back, so lookups never need tombstones.
+    int remove(Object key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        Object current;
+        while ((current = keys[i]) != null) {
+            if (current == key) {
+                int removed = values[i];
+                int gap = i;
+                int next = (i + 1) & mask;
+                while ((current = keys[next]) != null) {
+                    int home = slot(current, mask);
+                    //Moves back unless its home slot is between the gap and where it is now.
+                    if (((next - home) & mask) >= ((next - gap) & mask)) {
+                        keys[gap] = current;
+                        values[gap] = values[next];
+                        gap = next;
+                    }
+                    next = (next + 1) & mask;
+                }
+                keys[gap] = null;
+                size--;
+                return removed;
+            }
+            i = (i + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    int size() {
+        return size;
+    }
+
+    //Bytes held by the two arrays, for CompactDAG.estimatedBytes.
+    long estimatedBytes() {
+        return 16L + 4L * keys.length + 16L + 4L * values.length;
+    }
+
+    private void resize(int capacity) {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new Object[capacity];
+        values = new int[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    //Power of two table, so the high bits get folded into the low ones.
+    private static int slot(Object key, int mask) {
+        int h = System.identityHashCode(key) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
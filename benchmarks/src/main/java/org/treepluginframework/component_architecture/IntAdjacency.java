@@ -0,0 +1,202 @@
+package org.treepluginframework.component_architecture;
+
+import java.util.Arrays;
+
+/***
+ * One direction of CompactDAG's edges (children or parents), as int ids.
+ *
+ * compact() packs everything into CSR form: targets of node n are csrTargets[csrOffsets[n] .. csrOffsets[n + 1]).
+ * Edges added since the last compact() go in a per node delta instead. The first two live inline in first/second,
+ * which covers most nodes, past that the node gets an int[] of its own. Removing an edge that's in the CSR part
+ * just overwrites it with NONE until the next compact().
+ * Order is always the CSR part first, then the delta in the order it was added.
+ */
+final class IntAdjacency {
+    static final int NONE = -1;
+
+    private int[] deltaCount;
+    private int[] first;
+    private int[] second;
+    //All of a node's delta once it has more than two, null for everyone else.
+    private int[][] overflow;
+
+    private int[] csrOffsets = {0};
+    private int[] csrTargets = new int[0];
+    //Nodes the CSR part covers, newer ids have no CSR range.
+    private int csrNodes = 0;
+    private int tombstones = 0;
+
+    IntAdjacency(int capacity) {
+        deltaCount = new int[capacity];
+        first = new int[capacity];
+        second = new int[capacity];
+        overflow = new int[capacity][];
+    }
+
+    void grow(int capacity) {
+        deltaCount = Arrays.copyOf(deltaCount, capacity);
+        first = Arrays.copyOf(first, capacity);
+        second = Arrays.copyOf(second, capacity);
+        overflow = Arrays.copyOf(overflow, capacity);
+    }
+
+    void add(int node, int target) {
+        int count = deltaCount[node];
+        if (count == 0) {
+            first[node] = target;
+        } else if (count == 1) {
+            second[node] = target;
+        } else {
+            int[] more = overflow[node];
+            if (more == null) {
+                more = new int[4];
+                more[0] = first[node];
+                more[1] = second[node];
+                overflow[node] = more;
+            } else if (count == more.length) {
+                more = Arrays.copyOf(more, count * 2);
+                overflow[node] = more;
+            }
+            more[count] = target;
+        }
+        deltaCount[node] = count + 1;
+    }
+
+    boolean remove(int node, int target) {
+        if (node < csrNodes) {
+            for (int i = csrOffsets[node]; i < csrOffsets[node + 1]; i++) {
+                if (csrTargets[i] == target) {
+                    csrTargets[i] = NONE;
+                    tombstones++;
+                    return true;
+                }
+            }
+        }
+
+        int count = deltaCount[node];
+        int[] more = overflow[node];
+        for (int i = 0; i < count; i++) {
+            if (deltaAt(node, i, more) != target) continue;
+            //Shifted down so the delta keeps its order.
+            if (more != null) {
+                System.arraycopy(more, i + 1, more, i, count - i - 1);
+                if (count - 1 <= 2) {
+                    first[node] = more[0];
+                    second[node] = more[1];
+                    overflow[node] = null;
+                }
+            } else if (i == 0) {
+                first[node] = second[node];
+            }
+            deltaCount[node] = count - 1;
+            return true;
+        }
+        return false;
+    }
+
+    boolean contains(int node, int target) {
+        if (node < csrNodes) {
+            for (int i = csrOffsets[node]; i < csrOffsets[node + 1]; i++) {
+                if (csrTargets[i] == target) return true;
+            }
+        }
+        int count = deltaCount[node];
+        int[] more = overflow[node];
+        for (int i = 0; i < count; i++) {
+            if (deltaAt(node, i, more) == target) return true;
+        }
+        return false;
+    }
+
+    //Drops every edge of the node, for when its id gets freed.
+    void clear(int node) {
+        if (node < csrNodes) {
+            for (int i = csrOffsets[node]; i < csrOffsets[node + 1]; i++) {
+                if (csrTargets[i] != NONE) {
+                    csrTargets[i] = NONE;
+                    tombstones++;
+                }
+            }
+        }
+        deltaCount[node] = 0;
+        overflow[node] = null;
+    }
+
+    int count(int node) {
+        int count = deltaCount[node];
+        if (node < csrNodes) {
+            for (int i = csrOffsets[node]; i < csrOffsets[node + 1]; i++) {
+                if (csrTargets[i] != NONE) count++;
+            }
+        }
+        return count;
+    }
+
+    //Copies the node's targets into dest from pos, returns how many. dest needs room for count(node).
+    int copyTo(int node, int[] dest, int pos) {
+        int written = 0;
+        if (node < csrNodes) {
+            for (int i = csrOffsets[node]; i < csrOffsets[node + 1]; i++) {
+                int target = csrTargets[i];
+                if (target != NONE) dest[pos + written++] = target;
+            }
+        }
+        int count = deltaCount[node];
+        int[] more = overflow[node];
+        for (int i = 0; i < count; i++) {
+            dest[pos + written++] = deltaAt(node, i, more);
+        }
+        return written;
+    }
+
+    //Most this node could copyTo, without counting around tombstones. Cheap enough to size a buffer with.
+    int upperBound(int node) {
+        int bound = deltaCount[node];
+        if (node < csrNodes) bound += csrOffsets[node + 1] - csrOffsets[node];
+        return bound;
+    }
+
+    /***
+     * Rebuilds the CSR arrays with every live edge of the first nodeCount ids and empties the deltas.
+     */
+    void compact(int nodeCount) {
+        int[] offsets = new int[nodeCount + 1];
+        for (int n = 0; n < nodeCount; n++) {
+            offsets[n + 1] = offsets[n] + count(n);
+        }
+        int[] targets = new int[offsets[nodeCount]];
+        for (int n = 0; n < nodeCount; n++) {
+            copyTo(n, targets, offsets[n]);
+        }
+
+        csrOffsets = offsets;
+        csrTargets = targets;
+        csrNodes = nodeCount;
+        tombstones = 0;
+        Arrays.fill(deltaCount, 0, nodeCount, 0);
+        Arrays.fill(overflow, 0, nodeCount, null);
+    }
+
+    int tombstones() {
+        return tombstones;
+    }
+
+    //Bytes held by every array in here, overflow arrays included.
+    long estimatedBytes() {
+        long bytes = arrayBytes(deltaCount.length) * 3 + 16L + 4L * overflow.length
+                + arrayBytes(csrOffsets.length) + arrayBytes(csrTargets.length);
+        for (int[] more : overflow) {
+            if (more != null) bytes += arrayBytes(more.length);
+        }
+        return bytes;
+    }
+
+    private static long arrayBytes(int length) {
+        return 16L + 4L * length;
+    }
+
+    private int deltaAt(int node, int i, int[] more) {
+        if (more != null) return more[i];
+        return i == 0 ? first[node] : second[node];
+    }
+}
@@ -11,4 +11,6 @@ public @interface EventSubscription {
     int priority() default 0;
     //Without useSuperClasses, it's only going to look for that exact method.
     boolean useSuperClasses() default false;
+    //Work that can wait. Under a TickScheduler, once a tick is over its budget this handler (and everything under its node) gets pushed to a later tick.
+    boolean deferrable() default false;
 }
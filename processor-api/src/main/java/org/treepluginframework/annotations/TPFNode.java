@@ -9,4 +9,12 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 public @interface TPFNode {
     String alias() default "";
+
+    /***
+     * Children of this node that have the same priority, and don't share anything below them, get the event
+     * at the same time on the ForkJoinPool. The node only returns once all of them are done, and priority bands still run in order.
+     * Registering/unregistering from inside those children is deferred until the event is finished, and events they emit
+     * are queued and dispatched on the emitting thread once all of the children are done.
+     */
+    boolean parallelChildren() default false;
 }
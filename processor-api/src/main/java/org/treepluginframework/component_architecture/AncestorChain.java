@@ -0,0 +1,39 @@
+package org.treepluginframework.component_architecture;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * A node and every ancestor above it through DAG.getPrimaryParent, closest first, with the closest one of each class
+ * indexed so finding an UP event's endpoint is a single lookup.
+ * Cached per node by TPFEventDispatcher, and thrown out whenever the node or anything above it moves.
+ */
+final class AncestorChain {
+    final Object[] nodes;
+    private final Map<Class<?>, Object> closestByClass = new HashMap<>();
+
+    private AncestorChain(Object[] nodes) {
+        this.nodes = nodes;
+        for (Object node : nodes) {
+            closestByClass.putIfAbsent(WeakComponent.classOf(node), node);
+        }
+    }
+
+    static AncestorChain of(DAG graph, Object node) {
+        List<Object> chain = new ArrayList<>();
+        //The DAG refuses cycles, so following primary parents always ends at a root.
+        Object current = node;
+        while (current != null) {
+            chain.add(current);
+            current = graph.getPrimaryParent(current);
+        }
+        return new AncestorChain(chain.toArray());
+    }
+
+    //Closest node in the chain, the starting node included, whose class is exactly endpoint. Null if there isn't one.
+    Object closest(Class<?> endpoint) {
+        return closestByClass.get(endpoint);
+    }
+}
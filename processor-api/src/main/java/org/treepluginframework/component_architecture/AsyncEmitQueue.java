@@ -0,0 +1,126 @@
+package org.treepluginframework.component_architecture;
+
+import org.treepluginframework.events.EventAdapter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+/***
+ * Bounded queue of emits, drained in order by a single thread. One drain thread means everything is dispatched in the
+ * order it was queued, so the order per emitting root is kept too.
+ * Every future gets completed: a submit that races shutdown either gets dispatched, or rejected once the drain thread is gone.
+ */
+final class AsyncEmitQueue {
+    private final BlockingQueue<QueuedEmit> queue;
+    private final BackPressurePolicy policy;
+    private final BiConsumer<Object, EventAdapter<?>> dispatch;
+    private final Thread drainThread;
+
+    private volatile boolean running = true;
+    //Set once the drain thread is done. Anything queued after that would never be dispatched, so it gets rejected.
+    private volatile boolean terminated = false;
+
+    private record QueuedEmit(Object fromComponent, EventAdapter<?> adapter, CompletableFuture<EventAdapter<?>> result) {
+    }
+
+    AsyncEmitQueue(int capacity, BackPressurePolicy policy, boolean virtualThread, BiConsumer<Object, EventAdapter<?>> dispatch) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+        this.dispatch = dispatch;
+
+        Thread.Builder builder = virtualThread ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+        this.drainThread = builder.name("TPF-async-dispatch").start(this::drain);
+    }
+
+    CompletableFuture<EventAdapter<?>> submit(Object fromComponent, EventAdapter<?> adapter) {
+        CompletableFuture<EventAdapter<?>> result = new CompletableFuture<>();
+        if (!running) {
+            result.completeExceptionally(new RejectedExecutionException("Async dispatch has been shut down"));
+            return result;
+        }
+
+        QueuedEmit emit = new QueuedEmit(fromComponent, adapter, result);
+        switch (policy) {
+            case BLOCK -> {
+                //A handler queueing from the drain thread would wait on itself forever, so it only gets a try.
+                if (isDrainThread()) {
+                    if (!queue.offer(emit)) {
+                        result.completeExceptionally(new RejectedExecutionException("Async emit queue is full"));
+                    }
+                    break;
+                }
+                try {
+                    queue.put(emit);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.completeExceptionally(e);
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(emit)) {
+                    QueuedEmit dropped = queue.poll();
+                    if (dropped != null) dropped.result().cancel(false);
+                }
+            }
+            case REJECT -> {
+                if (!queue.offer(emit)) {
+                    result.completeExceptionally(new RejectedExecutionException("Async emit queue is full"));
+                }
+            }
+        }
+        //Shut down between the check above and queueing it. If the drain thread didn't get to it, nothing else will.
+        if (terminated) rejectQueued();
+        return result;
+    }
+
+    boolean isDrainThread() {
+        return Thread.currentThread() == drainThread;
+    }
+
+    //Whatever is still queued gets dispatched before the thread stops.
+    void shutdown() {
+        running = false;
+        drainThread.interrupt();
+    }
+
+    void awaitTermination() throws InterruptedException {
+        drainThread.join();
+    }
+
+    private void drain() {
+        try {
+            while (running || !queue.isEmpty()) {
+                QueuedEmit emit;
+                try {
+                    emit = queue.take();
+                } catch (InterruptedException e) {
+                    //shutdown wakes it up this way, the loop decides whether there's anything left to do.
+                    continue;
+                }
+
+                if (emit.result().isDone()) continue;
+                try {
+                    dispatch.accept(emit.fromComponent(), emit.adapter());
+                    emit.result().complete(emit.adapter());
+                } catch (Throwable t) {
+                    emit.result().completeExceptionally(t);
+                }
+            }
+        } finally {
+            terminated = true;
+            rejectQueued();
+        }
+    }
+
+    //Polling frees up room too, so a BLOCK caller stuck in put gets in, sees terminated and rejects its own.
+    private void rejectQueued() {
+        QueuedEmit emit;
+        while ((emit = queue.poll()) != null) {
+            emit.result().completeExceptionally(new RejectedExecutionException("Async dispatch has been shut down"));
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.treepluginframework.component_architecture;
+
+/***
+ * What TPFEventDispatcher.emitAsync does when its queue is full. EventJournal uses it the same way for records, see there.
+ */
+public enum BackPressurePolicy {
+    //The caller waits for room in the queue.
+    BLOCK,
+    //The oldest queued event is thrown out (its future is cancelled) to make room.
+    DROP_OLDEST,
+    //The new event isn't queued, its future fails with a RejectedExecutionException.
+    REJECT
+}
@@ -1,27 +1,140 @@
 package org.treepluginframework.component_architecture;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
-
 import java.util.*;
 
 public class DAG {
     //IdentityHashMap since I have to check for references instead of .equals() instead.
-    private final Map<Object, Set<Object>> adjList = new IdentityHashMap<>();
-    private final Map<Object, Set<Object>> reverseAdjList = new IdentityHashMap<>();
-    private final BiMap<UUID,Object> dagUUIDs = HashBiMap.create();
+    private final Map<Object, Node> nodes = new IdentityHashMap<>();
+    //Node id -> node. The other way round is Node.id.
+    private final LongObjectMap nodesById = new LongObjectMap(64);
+    private TPFNodeIds nodeIds;
+
+    private InterestResolver interestResolver = node -> new BitSet();
+    private int epoch = 0;
+
+    //Ends of the topological order, see orderEdge. New leaves go past maxOrd, new roots that are about to get a child go below minOrd.
+    private int maxOrd = 0;
+    private int minOrd = 0;
+    private int searchMark = 0;
+    //Reused by every orderEdge that has to search.
+    private final ArrayDeque<Node> searchStack = new ArrayDeque<>();
+    private final List<Node> forwardRegion = new ArrayList<>();
+    private final List<Node> backwardRegion = new ArrayList<>();
+    private static final Comparator<Node> BY_ORD = Comparator.comparingInt(n -> n.ord);
+
+    /***
+     * Tells the DAG which event type ids a node handles itself, so that every node can keep the union of its whole subtree.
+     * Has to be set before any node is added.
+     */
+    interface InterestResolver {
+        BitSet interestsOf(Object node);
+    }
+
+    private static final class Node {
+        //Linked so equal priorities keep the order children were added in, see getOrderedChildren.
+        final Set<Object> children = new LinkedHashSet<>();
+        //Linked, so the first parent a node was registered under stays first, see getPrimaryParent.
+        final Set<Object> parents = new LinkedHashSet<>();
+        final BitSet ownInterest;
+        //ownInterest, plus the subtreeInterest of every child.
+        BitSet subtreeInterest;
+        //Last walk that reached this node, see markVisited.
+        int visitEpoch;
+        //From nodeIds when the node was added, see getId.
+        long id;
+        //Position in the topological order, every parent has a smaller one than its children. See orderEdge.
+        int ord;
+        //Last orderEdge search that reached this node.
+        int searchMark;
+        //Children that were added with a routing key, both ways round. Null until the first one, most nodes never have any.
+        Map<Object, Object> keyOfChild;
+        Map<Object, List<Object>> childrenByKey;
+        //Event type -> children in dispatch order. Built the first time a type asks, then kept up to date on every add and remove.
+        Map<Class<?>, OrderedChildren> orderedChildren;
+
+        Node(BitSet ownInterest) {
+            this.ownInterest = ownInterest;
+            this.subtreeInterest = (BitSet) ownInterest.clone();
+        }
+    }
+
+    /***
+     * Tells the DAG the priority a node handles an event type with, or NO_HANDLER if it doesn't, for getOrderedChildren.
+     */
+    interface PriorityResolver {
+        int priorityOf(Object node, Class<?> eventType);
+    }
+
+    static final int NO_HANDLER = Integer.MIN_VALUE;
+
+    //Children sorted by priority, highest first, children without a handler last. Ties stay in the order they were added.
+    private static final class OrderedChildren {
+        Object[] children;
+        int[] priorities;
+        int size;
+
+        OrderedChildren(int capacity) {
+            children = new Object[Math.max(4, capacity)];
+            priorities = new int[children.length];
+        }
+
+        //After every child with the same or a higher priority, so it's stable.
+        void insert(Object child, int priority) {
+            if (size == children.length) {
+                children = Arrays.copyOf(children, size * 2);
+                priorities = Arrays.copyOf(priorities, size * 2);
+            }
+            int low = 0, high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (priorities[mid] >= priority) low = mid + 1;
+                else high = mid;
+            }
+            System.arraycopy(children, low, children, low + 1, size - low);
+            System.arraycopy(priorities, low, priorities, low + 1, size - low);
+            children[low] = child;
+            priorities[low] = priority;
+            size++;
+        }
+
+        void remove(Object child) {
+            for (int i = 0; i < size; i++) {
+                if (children[i] == child) {
+                    System.arraycopy(children, i + 1, children, i, size - i - 1);
+                    System.arraycopy(priorities, i + 1, priorities, i, size - i - 1);
+                    children[--size] = null;
+                    return;
+                }
+            }
+        }
+    }
+
+    private PriorityResolver priorityResolver = (node, eventType) -> NO_HANDLER;
+
+    void setPriorityResolver(PriorityResolver priorityResolver){
+        this.priorityResolver = priorityResolver;
+        for (Node n : nodes.values()) n.orderedChildren = null;
+    }
+
+    void setInterestResolver(InterestResolver interestResolver){
+        this.interestResolver = interestResolver;
+    }
 
     public void addNode(Object node) {
+        addNode(node, false);
+    }
+
+    //A node with no edges can go anywhere in the order. At the end is right for a new child, at the front for a new parent.
+    private void addNode(Object node, boolean atFront) {
         if (node == null) throw new IllegalArgumentException("Node cannot be null");
-        if(!adjList.containsKey(node)){
-            UUID rand = UUID.randomUUID();
-            while(dagUUIDs.containsKey(rand)){
-                rand = UUID.randomUUID();
-            }
-            dagUUIDs.put(rand, node);
+        if(!nodes.containsKey(node)){
+            Node n = new Node((BitSet) interestResolver.interestsOf(node).clone());
+            n.id = nodeIds().next();
+            nodesById.put(n.id, node);
+            if (maxOrd == Integer.MAX_VALUE || minOrd == Integer.MIN_VALUE) renumber();
+            n.ord = atFront ? --minOrd : ++maxOrd;
+            nodes.put(node, n);
         }
-        adjList.putIfAbsent(node, new HashSet<>());
-        reverseAdjList.putIfAbsent(node, new HashSet<>());
     }
 
     public void addEdge(Object from, Object to) {
@@ -29,100 +142,515 @@ public class DAG {
             throw new IllegalArgumentException("Destination of edge cannot be null");
         }
 
-        if (from != null && createsCycle(from, to)) {
-            throw new IllegalArgumentException("Adding edge from " + from + " to " + to + " would create a cycle.");
+        if (from != null) {
+            Node existingFrom = nodes.get(from);
+            Node existingTo = nodes.get(to);
+            //If either end is new there's no path back, and it gets an ord on the right side below.
+            if (from == to || (existingFrom != null && existingTo != null && !orderEdge(existingFrom, existingTo))) {
+                throw new IllegalArgumentException("Adding edge from " + from + " to " + to + " would create a cycle.");
+            }
         }
 
         addNode(to);
 
         if (from != null) {
-            addNode(from);
-            adjList.get(from).add(to);
-            reverseAdjList.get(to).add(from);
+            addNode(from, true);
+            Node toNode = nodes.get(to);
+            Node fromNode = nodes.get(from);
+            if (fromNode.children.add(to)) {
+                toNode.parents.add(from);
+                if (fromNode.orderedChildren != null) {
+                    for (Map.Entry<Class<?>, OrderedChildren> entry : fromNode.orderedChildren.entrySet()) {
+                        entry.getValue().insert(to, priorityResolver.priorityOf(to, entry.getKey()));
+                    }
+                }
+                addInterestUpwards(from, toNode.subtreeInterest);
+            }
         }
         // else: root node — no parent edge needed, just leave it in the graph
     }
 
+    /***
+     * Same as addEdge, but the child only gets events whose routing key equals key (or that have no key at all),
+     * and finding it by key is a hash lookup instead of a walk over every child. A null key is just addEdge.
+     */
+    public void addEdge(Object from, Object to, Object key) {
+        if (key == null || from == null) {
+            addEdge(from, to);
+            return;
+        }
+
+        Node fromNode = nodes.get(from);
+        if (fromNode != null && fromNode.children.contains(to)) {
+            throw new IllegalArgumentException(to + " is already a child of " + from);
+        }
+
+        addEdge(from, to);
+        fromNode = nodes.get(from);
+        if (fromNode.keyOfChild == null) {
+            fromNode.keyOfChild = new IdentityHashMap<>();
+            fromNode.childrenByKey = new HashMap<>();
+        }
+        fromNode.keyOfChild.put(to, key);
+        fromNode.childrenByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(to);
+    }
+
+    //Key the child was added under, or null if it's a plain child (or not a child at all).
+    public Object getRoutingKey(Object parent, Object child) {
+        Node n = nodes.get(parent);
+        return (n == null || n.keyOfChild == null) ? null : n.keyOfChild.get(child);
+    }
+
+    boolean hasKeyedChildren(Object parent) {
+        Node n = nodes.get(parent);
+        return n != null && n.keyOfChild != null && !n.keyOfChild.isEmpty();
+    }
+
+    //The live list, so looking up a key doesn't allocate. Callers can't modify it.
+    List<Object> getKeyedChildren(Object parent, Object key) {
+        Node n = nodes.get(parent);
+        if (n == null || n.childrenByKey == null) return Collections.emptyList();
+        List<Object> children = n.childrenByKey.get(key);
+        return children == null ? Collections.emptyList() : children;
+    }
+
+    //Every keyed child, whatever its key. A copy, since handlers can register while it's being walked.
+    List<Object> getAllKeyedChildren(Object parent) {
+        Node n = nodes.get(parent);
+        if (n == null || n.keyOfChild == null) return Collections.emptyList();
+        return new ArrayList<>(n.keyOfChild.keySet());
+    }
+
+    /***
+     * The node's children in the order a downstream event for eventType visits them: highest priority first, ties and children
+     * without a handler in the order they were added, children without a handler last.
+     * Returns the DAG's own array, which is only valid up to getOrderedChildCount and must not be changed.
+     */
+    Object[] getOrderedChildren(Object node, Class<?> eventType) {
+        OrderedChildren ordered = orderedChildren(node, eventType);
+        return ordered == null ? EMPTY : ordered.children;
+    }
+
+    int getOrderedChildCount(Object node, Class<?> eventType) {
+        OrderedChildren ordered = orderedChildren(node, eventType);
+        return ordered == null ? 0 : ordered.size;
+    }
+
+    private static final Object[] EMPTY = new Object[0];
+
+    private OrderedChildren orderedChildren(Object node, Class<?> eventType) {
+        Node n = nodes.get(node);
+        if (n == null || n.children.isEmpty()) return null;
+        if (n.orderedChildren == null) n.orderedChildren = new HashMap<>();
+
+        OrderedChildren ordered = n.orderedChildren.get(eventType);
+        if (ordered == null) {
+            ordered = new OrderedChildren(n.children.size());
+            for (Object child : n.children) {
+                ordered.insert(child, priorityResolver.priorityOf(child, eventType));
+            }
+            n.orderedChildren.put(eventType, ordered);
+        }
+        return ordered;
+    }
+
+    private static void unlinkOrdered(Node parent, Object child) {
+        if (parent.orderedChildren == null) return;
+        for (OrderedChildren ordered : parent.orderedChildren.values()) {
+            ordered.remove(child);
+        }
+    }
+
+    private static void unlinkKeyed(Node parent, Object child) {
+        if (parent.keyOfChild == null) return;
+        Object key = parent.keyOfChild.remove(child);
+        if (key == null) return;
+        List<Object> siblings = parent.childrenByKey.get(key);
+        siblings.removeIf(sibling -> sibling == child);
+        if (siblings.isEmpty()) parent.childrenByKey.remove(key);
+    }
+
 
     public boolean removeEdge(Object from, Object to) {
         boolean removed = false;
-        if (adjList.containsKey(from)) {
-            removed |= adjList.get(from).remove(to);
+        Node fromNode = nodes.get(from);
+        if (fromNode != null) {
+            removed |= fromNode.children.remove(to);
+            unlinkKeyed(fromNode, to);
+            unlinkOrdered(fromNode, to);
+        }
+        Node toNode = nodes.get(to);
+        if (toNode != null) {
+            removed |= toNode.parents.remove(from);
         }
-        if (reverseAdjList.containsKey(to)) {
-            removed |= reverseAdjList.get(to).remove(from);
+        if (removed && fromNode != null) {
+            recomputeInterestUpwards(from);
         }
         return removed;
     }
 
     public Set<Object> getChildren(Object node) {
-        return Collections.unmodifiableSet(adjList.getOrDefault(node, Collections.emptySet()));
+        Node n = nodes.get(node);
+        return (n == null) ? Collections.emptySet() : Collections.unmodifiableSet(n.children);
     }
 
     public Set<Object> getParents(Object node) {
-        return Collections.unmodifiableSet(reverseAdjList.getOrDefault(node, Collections.emptySet()));
+        Node n = nodes.get(node);
+        return (n == null) ? Collections.emptySet() : Collections.unmodifiableSet(n.parents);
     }
 
-    public boolean removeNode(Object node) {
-        boolean existed = adjList.containsKey(node) || reverseAdjList.containsKey(node);
+    /***
+     * The parent UP events climb through. For a node with more than one parent that's the oldest edge that's still there,
+     * so registering a node under a second parent never changes where its events bubble to.
+     */
+    public Object getPrimaryParent(Object node) {
+        Node n = nodes.get(node);
+        if (n == null || n.parents.isEmpty()) return null;
+        return n.parents.iterator().next();
+    }
 
-        if(dagUUIDs.containsValue(node)){
-            UUID uuidToRemove = dagUUIDs.inverse().get(node);
-            dagUUIDs.remove(uuidToRemove);
+    /***
+     * Starts a new walk for markVisited. Every node counts as unvisited again, without touching any of them.
+     */
+    int newEpoch() {
+        if (++epoch == 0) {
+            //Wrapped around, old marks could match again, so they all get cleared once.
+            for (Node n : nodes.values()) n.visitEpoch = 0;
+            epoch = 1;
         }
+        return epoch;
+    }
+
+    /***
+     * True the first time a node is reached during the walk that got this epoch from newEpoch, false after that.
+     * Nodes that aren't in the graph are always true.
+     */
+    boolean markVisited(Object node, int epoch) {
+        Node n = nodes.get(node);
+        if (n == null) return true;
+        if (n.visitEpoch == epoch) return false;
+        n.visitEpoch = epoch;
+        return true;
+    }
+
+    /***
+     * True if the node, or anything below it, handles any of the event type ids. Nodes that aren't in the graph don't have an answer, so they return true.
+     */
+    public boolean isSubtreeInterested(Object node, BitSet eventTypeIds) {
+        Node n = nodes.get(node);
+        return n == null || n.subtreeInterest.intersects(eventTypeIds);
+    }
+
+    public boolean removeNode(Object node) {
+        Node removedNode = nodes.remove(node);
+        boolean existed = removedNode != null;
+
+        if (removedNode == null) return false;
+        nodesById.remove(removedNode.id);
 
         // Remove all outgoing edges from this node
-        Set<Object> children = adjList.remove(node);
-        if (children != null) {
-            for (Object child : children) {
-                reverseAdjList.get(child).remove(node);
-            }
+        for (Object child : removedNode.children) {
+            nodes.get(child).parents.remove(node);
         }
 
         // Remove all incoming edges to this node
-        Set<Object> parents = reverseAdjList.remove(node);
-        if (parents != null) {
-            for (Object parent : parents) {
-                adjList.get(parent).remove(node);
-            }
+        for (Object parent : removedNode.parents) {
+            Node parentNode = nodes.get(parent);
+            parentNode.children.remove(node);
+            unlinkKeyed(parentNode, node);
+            unlinkOrdered(parentNode, node);
+        }
+        for (Object parent : removedNode.parents) {
+            recomputeInterestUpwards(parent);
         }
 
         return existed;
     }
 
-    private boolean createsCycle(Object from, Object to) {
-        // Check if there is a path from 'to' to 'from'
-        Set<Object> visited = new HashSet<>();
-        Deque<Object> stack = new ArrayDeque<>();
-        stack.push(to);
-
-        while (!stack.isEmpty()) {
-            Object current = stack.pop();
-            if (current.equals(from)) return true;
-            if (visited.add(current)) {
-                stack.addAll(adjList.getOrDefault(current, Collections.emptySet()));
+    /***
+     * root and everything under it that can only be reached through root, parents before children. A node that also has a
+     * parent outside of that isn't in it, and neither is anything under it. Empty if root isn't in the graph.
+     * Only looks at the subtree, whatever the size of the rest of the graph.
+     */
+    public List<Object> getSubtree(Object root) {
+        if (!nodes.containsKey(root)) return Collections.emptyList();
+
+        List<Object> subtree = new ArrayList<>();
+        subtree.add(root);
+        //Parents each node still has outside of what's been taken so far. It joins once that hits 0.
+        Map<Object, int[]> parentsLeft = new IdentityHashMap<>();
+        for (int i = 0; i < subtree.size(); i++) {
+            for (Object child : nodes.get(subtree.get(i)).children) {
+                int[] left = parentsLeft.computeIfAbsent(child, c -> new int[]{nodes.get(c).parents.size()});
+                if (--left[0] == 0) subtree.add(child);
+            }
+        }
+        return subtree;
+    }
+
+    //getSubtree, then removeNodes on it. Returns what was removed.
+    public List<Object> removeSubtree(Object root) {
+        List<Object> subtree = getSubtree(root);
+        removeNodes(subtree);
+        return subtree;
+    }
+
+    /***
+     * removeNode for all of them at once. Edges between two removed nodes just go with them, and each parent that stays
+     * gets its interests recomputed once instead of once per child it lost. Returns how many were in the graph.
+     */
+    public int removeNodes(Collection<?> toRemove) {
+        Set<Object> removing = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Object node : toRemove) {
+            if (nodes.containsKey(node)) removing.add(node);
+        }
+
+        Set<Object> keptParents = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Object node : removing) {
+            Node n = nodes.get(node);
+            for (Object child : n.children) {
+                if (!removing.contains(child)) nodes.get(child).parents.remove(node);
+            }
+            for (Object parent : n.parents) {
+                if (removing.contains(parent)) continue;
+                Node parentNode = nodes.get(parent);
+                parentNode.children.remove(node);
+                unlinkKeyed(parentNode, node);
+                //Rebuilt the next time it's asked for, cheaper than taking children out one at a time.
+                parentNode.orderedChildren = null;
+                keptParents.add(parent);
+            }
+        }
+        for (Object node : removing) {
+            nodesById.remove(nodes.remove(node).id);
+        }
+        for (Object parent : keptParents) {
+            recomputeInterestUpwards(parent);
+        }
+        return removing.size();
+    }
+
+    /***
+     * Adds every node and edge in subtree, with subtree's root under parent (or as a root of its own if parent is null).
+     * None of the subtree's nodes can be in the graph yet. They're all new, so the only edge that could close a cycle is
+     * parent -> root, and that can't either: the new nodes get ords after everything already in the graph, so nothing has to be searched.
+     * Interests are worked out bottom up inside the subtree, then pushed above parent once.
+     */
+    public void addSubtree(Object parent, Subtree subtree) {
+        addSubtree(parent, subtree, subtree.nodes);
+    }
+
+    //nodes stands in for subtree.nodes, same positions. TPFEventDispatcher swaps weak components for their WeakComponent.
+    void addSubtree(Object parent, Subtree subtree, Object[] subtreeNodes) {
+        checkSubtree(parent, subtreeNodes);
+
+        Node[] added = new Node[subtreeNodes.length];
+        for (int i = 0; i < subtreeNodes.length; i++) {
+            Node n = new Node((BitSet) interestResolver.interestsOf(subtreeNodes[i]).clone());
+            n.id = nodeIds().next();
+            if (maxOrd == Integer.MAX_VALUE) renumber();
+            n.ord = ++maxOrd;
+            nodes.put(subtreeNodes[i], n);
+            nodesById.put(n.id, subtreeNodes[i]);
+            added[i] = n;
+        }
+        for (int e = 0; e < subtree.edgeFrom.length; e++) {
+            int from = subtree.edgeFrom[e];
+            int to = subtree.edgeTo[e];
+            added[from].children.add(subtreeNodes[to]);
+            added[to].parents.add(subtreeNodes[from]);
+        }
+        //Children always come after their parents, so going backwards every child is done before its parents look at it.
+        for (int i = added.length - 1; i >= 0; i--) {
+            for (Object child : added[i].children) {
+                added[i].subtreeInterest.or(nodes.get(child).subtreeInterest);
+            }
+        }
+
+        if (parent == null) return;
+        addNode(parent, true);
+        Node parentNode = nodes.get(parent);
+        Object root = subtreeNodes[0];
+        parentNode.children.add(root);
+        added[0].parents.add(parent);
+        if (parentNode.orderedChildren != null) {
+            for (Map.Entry<Class<?>, OrderedChildren> entry : parentNode.orderedChildren.entrySet()) {
+                entry.getValue().insert(root, priorityResolver.priorityOf(root, entry.getKey()));
+            }
+        }
+        addInterestUpwards(parent, added[0].subtreeInterest);
+    }
+
+    //What addSubtree refuses, without changing anything.
+    void checkSubtree(Object parent, Object[] subtreeNodes) {
+        for (Object node : subtreeNodes) {
+            if (node == parent) {
+                throw new IllegalArgumentException("Adding edge from " + parent + " to " + subtreeNodes[0] + " would create a cycle.");
             }
+            if (nodes.containsKey(node)) throw new IllegalArgumentException(node + " is already in the graph");
         }
-        return false;
+    }
+
+    //Adding only ever grows the sets, so it stops as soon as an ancestor already has every bit.
+    private void addInterestUpwards(Object start, BitSet interest) {
+        if (interest.isEmpty()) return;
+
+        Deque<Object> toVisit = new ArrayDeque<>();
+        toVisit.push(start);
+        while (!toVisit.isEmpty()) {
+            Node current = nodes.get(toVisit.pop());
+            BitSet missing = (BitSet) interest.clone();
+            missing.andNot(current.subtreeInterest);
+            if (missing.isEmpty()) continue;
+
+            current.subtreeInterest.or(missing);
+            toVisit.addAll(current.parents);
+        }
+    }
+
+    //Removing can shrink the sets, so each ancestor gets rebuilt from its children until one doesn't change.
+    private void recomputeInterestUpwards(Object start) {
+        Deque<Object> toVisit = new ArrayDeque<>();
+        toVisit.push(start);
+        while (!toVisit.isEmpty()) {
+            Node current = nodes.get(toVisit.pop());
+            if (current == null) continue;
+
+            BitSet recomputed = (BitSet) current.ownInterest.clone();
+            for (Object child : current.children) {
+                recomputed.or(nodes.get(child).subtreeInterest);
+            }
+            if (recomputed.equals(current.subtreeInterest)) continue;
+
+            current.subtreeInterest = recomputed;
+            toVisit.addAll(current.parents);
+        }
+    }
+
+    /***
+     * Pearce-Kelly dynamic topological ordering. Makes room for the edge from -> to in the order and returns true,
+     * or returns false without changing anything if the edge would close a cycle.
+     * An edge that already goes from a smaller ord to a bigger one is fine as is, which covers attaching new children.
+     * Otherwise only nodes with an ord between to's and from's can be on a path between them, so the search stays inside that window:
+     * forward from to (finding from means a cycle), then backward from from. The ords the two regions had get handed back out,
+     * the backward region first, so everything outside the window keeps its ord.
+     */
+    private boolean orderEdge(Node fromNode, Node toNode) {
+        int lower = toNode.ord;
+        int upper = fromNode.ord;
+        if (upper < lower) return true;
+
+        //The regions can't share a node, that node would be on a path from to to from, so one mark covers both searches.
+        int mark = ++searchMark;
+        if (mark == 0) {
+            for (Node n : nodes.values()) n.searchMark = 0;
+            mark = searchMark = 1;
+        }
+        forwardRegion.clear();
+        backwardRegion.clear();
+
+        searchStack.clear();
+        toNode.searchMark = mark;
+        searchStack.push(toNode);
+        while (!searchStack.isEmpty()) {
+            Node current = searchStack.pop();
+            forwardRegion.add(current);
+            for (Object child : current.children) {
+                Node c = nodes.get(child);
+                if (c == fromNode) {
+                    searchStack.clear();
+                    return false;
+                }
+                if (c.searchMark != mark && c.ord < upper) {
+                    c.searchMark = mark;
+                    searchStack.push(c);
+                }
+            }
+        }
+
+        fromNode.searchMark = mark;
+        searchStack.push(fromNode);
+        while (!searchStack.isEmpty()) {
+            Node current = searchStack.pop();
+            backwardRegion.add(current);
+            for (Object parent : current.parents) {
+                Node p = nodes.get(parent);
+                if (p.searchMark != mark && p.ord > lower) {
+                    p.searchMark = mark;
+                    searchStack.push(p);
+                }
+            }
+        }
+
+        forwardRegion.sort(BY_ORD);
+        backwardRegion.sort(BY_ORD);
+        int[] ords = new int[forwardRegion.size() + backwardRegion.size()];
+        int i = 0;
+        for (Node n : backwardRegion) ords[i++] = n.ord;
+        for (Node n : forwardRegion) ords[i++] = n.ord;
+        Arrays.sort(ords);
+        i = 0;
+        for (Node n : backwardRegion) n.ord = ords[i++];
+        for (Node n : forwardRegion) n.ord = ords[i++];
+        return true;
+    }
+
+    //Ran out of room at one end, pack the order back into 0..size-1.
+    private void renumber() {
+        List<Node> ordered = new ArrayList<>(nodes.values());
+        ordered.sort(BY_ORD);
+        for (int i = 0; i < ordered.size(); i++) {
+            ordered.get(i).ord = i;
+        }
+        minOrd = 0;
+        maxOrd = ordered.size() - 1;
     }
 
     public boolean containsNode(Object node) {
-        return adjList.containsKey(node);
+        return nodes.containsKey(node);
+    }
+
+    //Id the node got when it was added, TPFNodeIds.NONE if it isn't in the graph.
+    public long getId(Object node) {
+        Node n = nodes.get(node);
+        return n == null ? TPFNodeIds.NONE : n.id;
+    }
+
+    public Object getNode(long id) {
+        return nodesById.get(id);
+    }
+
+    //getId as a UUID, null if it isn't in the graph. Builds a new UUID every call.
+    public UUID getUUID(Object node) {
+        return nodeIds().toUUID(getId(node));
+    }
+
+    /***
+     * Where node ids come from, TPF hands its own in so every id it logs has its prefix.
+     * Has to be set before any node is added, a DAG without one makes its own on the first addNode.
+     */
+    void setNodeIds(TPFNodeIds nodeIds){
+        this.nodeIds = nodeIds;
+    }
+
+    TPFNodeIds nodeIds(){
+        if (nodeIds == null) nodeIds = new TPFNodeIds(UUID.randomUUID());
+        return nodeIds;
     }
 
     public Set<Object> getAllNodes() {
-        return Collections.unmodifiableSet(adjList.keySet());
+        return Collections.unmodifiableSet(nodes.keySet());
     }
 
     public void printGraph() {
         System.out.println("Forward Edges:");
-        for (var entry : adjList.entrySet()) {
-            System.out.println(entry.getKey() + " -> " + entry.getValue());
+        for (var entry : nodes.entrySet()) {
+            System.out.println(entry.getKey() + " -> " + entry.getValue().children);
         }
 
         System.out.println("\nReverse Edges:");
-        for (var entry : reverseAdjList.entrySet()) {
-            System.out.println(entry.getKey() + " <- " + entry.getValue());
+        for (var entry : nodes.entrySet()) {
+            System.out.println(entry.getKey() + " <- " + entry.getValue().parents);
         }
     }
 
@@ -140,7 +668,7 @@ public class DAG {
         System.out.println("\t".repeat(depth) + node.toString());
 
         // Recurse on children (dependencies)
-        Set<Object> children = adjList.getOrDefault(node, Collections.emptySet());
+        Set<Object> children = getChildren(node);
         for (Object child : children) {
             printFromHelper(child, depth+1);
         }
@@ -0,0 +1,11 @@
+package org.treepluginframework.component_architecture;
+
+/***
+ * How TPFEventDispatcher treats nodes that can be reached down more than one path (a node with several parents).
+ */
+public enum DeliveryMode {
+    //A shared node, and everything under it, gets the event once for every path down to it. How it's always worked.
+    PER_PATH,
+    //Every node gets the event at most once, the first time the walk reaches it.
+    EXACTLY_ONCE
+}
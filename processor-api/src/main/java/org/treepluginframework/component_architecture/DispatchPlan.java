@@ -0,0 +1,159 @@
+package org.treepluginframework.component_architecture;
+
+import org.treepluginframework.events.EventAdapter;
+import org.treepluginframework.jfr.TPFFlightRecorder;
+import org.treepluginframework.jfr.TPFHandlerEvent;
+import org.treepluginframework.metrics.DispatchMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Everything a downstream dispatch from one root will call for one event type, flattened in the order the
+ * recursive walk visits it (node first, then children with a handler by descending priority, then the rest).
+ * Nodes without a handler for the type don't show up at all, so running the plan is just a loop over the arrays.
+ * An entry either has a handler, or (for TPFNode.parallelChildren nodes) a ParallelSection holding the children's own plans,
+ * or a KeyedRoute for the node's keyed children, which come after everything else under that node.
+ * Plans are never modified, the dispatcher throws them away (and flags them) when the graph under the root changes.
+ */
+final class DispatchPlan {
+    final Object[] nodes;
+    final HandlerHolder[] handlers;
+    final ParallelSection[] forks;
+    final KeyedRoute[] routes;
+    //Index just past the last entry under entry i's node. Only filled in for deferrable handlers, everything else is i + 1.
+    final int[] subtreeEnds;
+    //How far below the root entry i's node is, the root being 0.
+    final int[] depths;
+    //Only there when DispatchMetrics.ENABLED, so invoke doesn't have to look anything up.
+    final DispatchMetrics.HandlerMetrics[] handlerMetrics;
+    //Handlers this plan calls, counting the ones in its parallel sections, and the deepest level it reaches. For the fan-out and depth metrics.
+    final int handlerCount;
+    final int maxDepth;
+    //Whether running it goes through a KeyedRoute, its parallel sections included. Those emits run more than one plan.
+    final boolean hasRoutes;
+
+    //Set when the graph under the root changed, so a dispatch that's running this plan knows to look for a new one.
+    boolean invalidated = false;
+
+    private DispatchPlan(Builder builder) {
+        this.nodes = builder.nodes.toArray();
+        this.handlers = builder.handlers.toArray(new HandlerHolder[0]);
+        this.forks = builder.forks.toArray(new ParallelSection[0]);
+        this.routes = builder.routes.toArray(new KeyedRoute[0]);
+        this.subtreeEnds = new int[builder.subtreeEnds.size()];
+        for (int i = 0; i < subtreeEnds.length; i++) {
+            subtreeEnds[i] = builder.subtreeEnds.get(i);
+        }
+        this.depths = new int[builder.depths.size()];
+        int count = 0;
+        int deepest = 0;
+        boolean routed = false;
+        for (int i = 0; i < depths.length; i++) {
+            depths[i] = builder.depths.get(i);
+            deepest = Math.max(deepest, depths[i]);
+            if (handlers[i] != null) {
+                count++;
+            } else if (forks[i] != null) {
+                count += forks[i].handlerCount;
+                deepest = Math.max(deepest, depths[i] + forks[i].maxDepth);
+                routed |= forks[i].hasRoutes;
+            } else {
+                routed = true;
+            }
+        }
+        this.handlerCount = count;
+        this.maxDepth = deepest;
+        this.hasRoutes = routed;
+        this.handlerMetrics = DispatchMetrics.ENABLED ? builder.handlerMetrics.toArray(new DispatchMetrics.HandlerMetrics[0]) : null;
+    }
+
+    //Collects entries in order while the dispatcher walks the tree.
+    static final class Builder {
+        private final List<Object> nodes = new ArrayList<>();
+        private final List<HandlerHolder> handlers = new ArrayList<>();
+        private final List<ParallelSection> forks = new ArrayList<>();
+        private final List<KeyedRoute> routes = new ArrayList<>();
+        private final List<Integer> subtreeEnds = new ArrayList<>();
+        private final List<Integer> depths = new ArrayList<>();
+        private final List<DispatchMetrics.HandlerMetrics> handlerMetrics = new ArrayList<>();
+
+        //Returns the entry's index, for endSubtree. metrics is null unless DispatchMetrics.ENABLED.
+        int handler(Object node, HandlerHolder handler, int depth, DispatchMetrics.HandlerMetrics metrics) {
+            add(node, handler, null, null, depth);
+            handlerMetrics.set(nodes.size() - 1, metrics);
+            return nodes.size() - 1;
+        }
+
+        //Everything added since the entry was under its node.
+        void endSubtree(int entry) {
+            subtreeEnds.set(entry, nodes.size());
+        }
+
+        void fork(Object node, ParallelSection section, int depth) {
+            add(node, null, section, null, depth);
+        }
+
+        void route(Object node, KeyedRoute route, int depth) {
+            add(node, null, null, route, depth);
+        }
+
+        private void add(Object node, HandlerHolder handler, ParallelSection section, KeyedRoute route, int depth) {
+            nodes.add(node);
+            handlers.add(handler);
+            forks.add(section);
+            routes.add(route);
+            subtreeEnds.add(nodes.size());
+            depths.add(depth);
+            handlerMetrics.add(null);
+        }
+
+        DispatchPlan build() {
+            return new DispatchPlan(this);
+        }
+    }
+
+    int size() {
+        return nodes.length;
+    }
+
+    //Calls entry i's handler, timing it when DispatchMetrics.ENABLED or a JFR recording has TPFHandlerEvent enabled. Otherwise this is just the call.
+    void invoke(int entry, EventAdapter<?> adapter) {
+        if (!DispatchMetrics.ENABLED && !TPFFlightRecorder.handlerEnabled()) {
+            handlers[entry].invoke(nodes[entry], adapter);
+            return;
+        }
+        invokeTimed(handlers[entry], nodes[entry], adapter, DispatchMetrics.ENABLED ? handlerMetrics[entry] : null);
+    }
+
+    //metrics can be null, the JFR event is only built if a recording has it enabled.
+    static void invokeTimed(HandlerHolder handler, Object node, EventAdapter<?> adapter, DispatchMetrics.HandlerMetrics metrics) {
+        TPFHandlerEvent flight = TPFFlightRecorder.handlerEnabled() ? new TPFHandlerEvent() : null;
+        if (flight != null) flight.begin();
+        long start = System.nanoTime();
+        try {
+            handler.invoke(node, adapter);
+        } finally {
+            if (metrics != null) metrics.record(System.nanoTime() - start);
+            if (flight != null) {
+                flight.end();
+                if (flight.shouldCommit()) {
+                    flight.nodeClass = WeakComponent.classOf(node);
+                    flight.eventType = adapter.getEffectiveEventType();
+                    flight.commit();
+                }
+            }
+        }
+    }
+
+    //True if the first count entries of both plans are the same calls, so a dispatch can swap plans halfway through.
+    boolean sharesPrefix(DispatchPlan other, int count) {
+        if (count > nodes.length || count > other.nodes.length) return false;
+        for (int i = 0; i < count; i++) {
+            if (nodes[i] != other.nodes[i] || handlers[i] != other.handlers[i] || forks[i] != other.forks[i]) return false;
+            //Routes get made fresh every compile, but one for the same node does the same thing.
+            if ((routes[i] == null) != (other.routes[i] == null)) return false;
+        }
+        return true;
+    }
+}
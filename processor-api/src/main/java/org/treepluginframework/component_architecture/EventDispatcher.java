@@ -1,92 +1,38 @@
 package org.treepluginframework.component_architecture;
 
-import org.treepluginframework.annotations.EventSubscription;
 import org.treepluginframework.events.EventAdapter;
+import org.treepluginframework.events.EventDirection;
 import org.treepluginframework.events.IEvent;
 import org.treepluginframework.events.NativeEventAdapter;
 
-import java.lang.reflect.Method;
 import java.util.*;
 
 public class EventDispatcher {
 
-    private final Map<Class<?>, Map<Class<?>, HandlerHolder>>  reflectionMethodCache = new HashMap<>();
-
     //Subscriptions: instance -> its handler holders map
     private final Map<Object,Map<Class<?>, HandlerHolder>> subscriptions = new HashMap<>();
 
     private final OneToManyBiMap<Object,Object> relationshipMap = new OneToManyBiMap<>();
 
+    //Parent -> event type -> its children sorted by priority. Thrown out for a parent whenever its children change, instead of sorting on every dispatch.
+    private final Map<Object, Map<Class<?>, List<Object>>> orderedChildren = new HashMap<>();
 
-    public void registerComponent(Object component, Object parent){
-        Class<?> clazz = component.getClass();
-        Map<Class<?>,HandlerHolder> reflectionCache = reflectionMethodCache.computeIfAbsent(clazz, cls ->{
-            Map<Class<?>, HandlerHolder> map = new HashMap<>();
-            for (Method method : cls.getDeclaredMethods()) {
-                if (method.isAnnotationPresent(EventSubscription.class)) {
-                    Class<?>[] params = method.getParameterTypes();
-
-                    boolean used = false;
-                    boolean expectsAdapter = false;
-                    if(params.length == 1)
-                    {
-                        used = true;
-                        expectsAdapter = false;
-                    } else if (params.length == 2 &&
-                            EventAdapter.class.isAssignableFrom(params[1])) {
-                        used = true;
-                        expectsAdapter = true;
-                    }
-
-                    if(used){
-                        System.out.println("Added a subscription for the event " + params[0].toString());
-                        EventSubscription annotation = method.getAnnotation(EventSubscription.class);
-                        int priority = annotation.priority();
-                        method.setAccessible(true);
-                        map.put(params[0], new HandlerHolder(method, priority,expectsAdapter));
-                        break;
-                    }
-                    /*
-                    for(Class<?> classType : acceptableEventTypes){
-                        boolean expectsAdapter = false;
-                        if(params.length == 1 && classType.isAssignableFrom(params[0]))
-                        {
-                            used = true;
-                            expectsAdapter = false;
-                        } else if (params.length == 2 &&
-                                classType.isAssignableFrom(params[0]) &&
-                                EventAdapter.class.isAssignableFrom(params[1])) {
-                            used = true;
-                            expectsAdapter = true;
-                        }
-
-                        if(used){
-                            System.out.println("Added a subscription for the event " + classType.toString());
-                            EventSubscription annotation = method.getAnnotation(EventSubscription.class);
-                            int priority = annotation.priority();
-                            method.setAccessible(true);
-                            map.put(params[0], new HandlerHolder(method, priority,expectsAdapter));
-                            break;
-                        }
-                    }
-                    */
+    //Reused by every dispatch, see NodeStack.
+    private final NodeStack stack = new NodeStack(64);
 
 
-                    if(!used)
-                    {
-                        System.err.println("Invalid method signature for event handler: " + method +
-                                " in class: " + cls.getName() + ". Accepted parameter types: " + Arrays.toString(params));
-                    }
-                }
-            }
-            return map;
-        });
+    public void registerComponent(Object component, Object parent){
+        //Scanned once per class, and shared with TPFEventDispatcher.
+        Map<Class<?>,HandlerHolder> reflectionCache = RuntimeInvokers.handlersFor(component.getClass());
 
         subscriptions.put(component,reflectionCache);
         relationshipMap.put(parent,component);
+        orderedChildren.remove(parent);
     }
 
     public void unregisterComponent(Object component){
+        orderedChildren.remove(relationshipMap.getParentOfChild(component));
+        orderedChildren.remove(component);
         subscriptions.remove(component);
         relationshipMap.removeCompletely(component);
     }
@@ -112,29 +58,39 @@ public class EventDispatcher {
             return;
         }
 
-        if(adapter.getDirection().equals("up"))
+        //Going up is a straight line, so it's just a loop until it finds the endpoint or runs out of parents.
+        while(adapter.getDirection() == EventDirection.UP)
         {
             adapter.recordVisitedUpstream(component);
-        }
-        else if(adapter.getDirection().equals("down"))
-        {
-            adapter.recordVisistedDownStream(component);
-        }
 
-        //Once you find the endpoint, start going back down.
-        if(adapter.getDirection().equals("up") && adapter.getEndPoint() == component.getClass()){
-            adapter.setDirection("down");
+            //Once you find the endpoint, start going back down.
+            if(adapter.getEndPoint() == component.getClass()){
+                adapter.setDirection(EventDirection.DOWN);
+                break;
+            }
+
+            component = relationshipMap.getParentOfChild(component);
+            if(component == null) return;
         }
 
-        // Propagate downstream or upstream
-        if ("down".equals(adapter.getDirection())) {
+        if(adapter.getDirection() != EventDirection.DOWN) return;
+
+        //Going down is depth first off the dispatcher's stack instead of one Java frame per level.
+        //Children get pushed in reverse, so they come off in the same order the recursive walk visited them.
+        int base = stack.size();
+        stack.push(component);
+        while(stack.size() > base)
+        {
+            Object current = stack.pop();
+            adapter.recordVisistedDownStream(current);
+
             //Only execute the method if it's going downstream. Letting Components access things going upstream sounds like a good way to get big sphagetti.
-            HandlerHolder holder = subscriptions.getOrDefault(component, Collections.emptyMap()).get(adapter.getEffectiveEventType());
+            HandlerHolder holder = subscriptions.getOrDefault(current, Collections.emptyMap()).get(adapter.getEffectiveEventType());
 
-            if(holder == null && subscriptions.containsKey(component)) {
+            if(holder == null && subscriptions.containsKey(current)) {
                 //This is to cover Subscriptions that only cover the base class of an object.
                 //One example, subscribing to EntityDamageEvent, and getting a EntityDamageByEntityEvent.
-                for (Map.Entry<Class<?>, HandlerHolder> entry : subscriptions.get(component).entrySet()) {
+                for (Map.Entry<Class<?>, HandlerHolder> entry : subscriptions.get(current).entrySet()) {
                     if (entry.getKey().isAssignableFrom(adapter.getEffectiveEventType())) {
                         //TODO: Add a new subscription with that class, so that I don't have to recompute it again
                         holder = entry.getValue();
@@ -146,55 +102,41 @@ public class EventDispatcher {
             if(holder != null)
             {
                 try {
-                    if(holder.expectsAdapter)
-                    {
-                        holder.method.invoke(component, adapter.getEvent(), adapter);
-                    }
-                    else
-                    {
-                        holder.method.invoke(component, adapter.getEvent());
-                    }
-
-                    if (adapter.isPropagationStopped()) return;
+                    holder.invoke(current, adapter);
                 } catch(Exception e){
                     e.printStackTrace();
                 }
             }
 
-            List<Object> children = relationshipMap.getChildrenOfParent(component);
-            Collections.sort(children, new Comparator<Object>() {
-                @Override
-                public int compare(Object o1, Object o2) {
-                    int o1Priority = (!subscriptions.containsKey(o1)) ? 0 : subscriptions.get(o1).get(adapter.getEffectiveEventType()).priority;
-                    int o2Priority = (!subscriptions.containsKey(o2)) ? 0 : subscriptions.get(o2).get(adapter.getEffectiveEventType()).priority;
-                    return o1Priority - o2Priority;
-                }
-            });
-
-            for (Object child : children) {
-                dispatch(child, adapter);
-                if (adapter.isPropagationStopped()) {
-                    break;
-                }
+            //Stopping drops everything still on the stack, nothing has to unwind.
+            if (adapter.isPropagationStopped()) {
+                stack.truncate(base);
+                return;
             }
-        } else if ("up".equals(adapter.getDirection())) {
-            Object parent = relationshipMap.getParentOfChild(component);
-            if (parent != null) {
-                dispatch(parent, adapter);
+
+            List<Object> children = orderedChildren(current, adapter.getEffectiveEventType());
+
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
             }
         }
-        
     }
-    
-    private class HandlerHolder{
-        final Method method;
-        final int priority;
-        final boolean expectsAdapter;
-
-        HandlerHolder(Method method, int priority, boolean expectsAdapter){
-            this.method = method;
-            this.priority = priority;
-            this.expectsAdapter = expectsAdapter;
+
+    private List<Object> orderedChildren(Object parent, Class<?> eventType){
+        Map<Class<?>, List<Object>> byType = orderedChildren.computeIfAbsent(parent, k -> new HashMap<>());
+        List<Object> ordered = byType.get(eventType);
+        if(ordered == null){
+            //A copy, sorting used to reorder relationshipMap's own list.
+            ordered = new ArrayList<>(relationshipMap.getChildrenOfParent(parent));
+            ordered.sort(Comparator.comparingInt(child -> priorityOf(child, eventType)));
+            byType.put(eventType, ordered);
         }
+        return ordered;
+    }
+
+    //Children without a handler for the type count as 0, instead of throwing.
+    private int priorityOf(Object component, Class<?> eventType){
+        HandlerHolder holder = subscriptions.getOrDefault(component, Collections.emptyMap()).get(eventType);
+        return holder == null ? 0 : holder.priority;
     }
 }
@@ -0,0 +1,40 @@
+package org.treepluginframework.component_architecture;
+
+import org.treepluginframework.events.EventAdapter;
+import org.treepluginframework.events.EventInvoker;
+
+// Internal holder for a handler and its priority
+final class HandlerHolder {
+    final EventInvoker invoker;
+    final int handlerId;
+    final int priority;
+    final boolean expectsAdapter;
+    //Also gets subclasses of the event type, see EventSubscription.useSuperClasses
+    final boolean useSuperClasses;
+    //See EventSubscription.deferrable
+    final boolean deferrable;
+
+    HandlerHolder(EventInvoker invoker, int handlerId, int priority, boolean expectsAdapter, boolean useSuperClasses, boolean deferrable) {
+        this.invoker = invoker;
+        this.handlerId = handlerId;
+        this.priority = priority;
+        this.expectsAdapter = expectsAdapter;
+        this.useSuperClasses = useSuperClasses;
+        this.deferrable = deferrable;
+    }
+
+    //component can be a WeakComponent from the graph, it's skipped if what it pointed to has already been collected.
+    void invoke(Object component, EventAdapter<?> adapter) {
+        if (component instanceof WeakComponent weak) {
+            component = weak.get();
+            if (component == null) return;
+        }
+        try {
+            invoker.invoke(handlerId, component, adapter.getEvent(), adapter);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.treepluginframework.component_architecture;
+
+import org.treepluginframework.events.EventAdapter;
+
+/***
+ * Plan entry for the children a node registered with a routing key. They aren't compiled into the plan,
+ * the dispatcher looks up the ones matching the event's key when it gets here, so an event for one player only
+ * touches that player instead of every sibling.
+ */
+final class KeyedRoute {
+    interface Router {
+        void route(Object parent, EventAdapter<?> adapter);
+    }
+
+    final Object parent;
+    private final Router router;
+
+    KeyedRoute(Object parent, Router router) {
+        this.parent = parent;
+        this.router = router;
+    }
+
+    void run(EventAdapter<?> adapter) {
+        router.route(parent, adapter);
+    }
+}
@@ -0,0 +1,97 @@
+package org.treepluginframework.component_architecture;
+
+/***
+ * long -> Object, open addressing over two flat arrays, for the DAG's node ids. Same job as a HashMap<Long, Object>
+ * without a boxed Long or an entry per key. 0 can't be a key, it marks an empty slot (TPFNodeIds never hands it out).
+ */
+final class LongObjectMap {
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    LongObjectMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    Object get(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        long current;
+        while ((current = keys[i]) != 0L) {
+            if (current == key) return values[i];
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    void put(long key, Object value) {
+        if (key == 0L) throw new IllegalArgumentException("0 can't be used as a key");
+        if ((size + 1) * 2 > keys.length) resize(keys.length * 2);
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        long current;
+        while ((current = keys[i]) != 0L) {
+            if (current == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    //Backward shift instead of tombstones, so lookups never have to step over deleted slots.
+    Object remove(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        long current;
+        while ((current = keys[i]) != 0L) {
+            if (current == key) {
+                Object removed = values[i];
+                int gap = i;
+                int next = (i + 1) & mask;
+                while ((current = keys[next]) != 0L) {
+                    int home = slot(current, mask);
+                    //Moves back unless its home slot is between the gap and where it is now.
+                    if (((next - home) & mask) >= ((next - gap) & mask)) {
+                        keys[gap] = current;
+                        values[gap] = values[next];
+                        gap = next;
+                    }
+                    next = (next + 1) & mask;
+                }
+                keys[gap] = 0L;
+                values[gap] = null;
+                size--;
+                return removed;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0L) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    //Sequential ids only differ in the low bits, so they get mixed before masking.
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,55 @@
+package org.treepluginframework.component_architecture;
+
+import java.util.Arrays;
+
+/***
+ * Growable array stack the dispatchers walk the tree with, instead of recursing once per level.
+ * Each dispatcher keeps one and reuses it. A walk that starts while another is running (a handler emitting from inside a handler)
+ * just remembers size() and stops once it's popped back down to it, so it never touches the outer walk's entries.
+ */
+final class NodeStack {
+    private Object[] items;
+    //An int riding along with each item, the plan compiler keeps the node's depth in it.
+    private int[] tags;
+    private int size;
+
+    NodeStack(int initialCapacity) {
+        this.items = new Object[Math.max(1, initialCapacity)];
+        this.tags = new int[items.length];
+    }
+
+    void push(Object item) {
+        push(item, 0);
+    }
+
+    void push(Object item, int tag) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+            tags = Arrays.copyOf(tags, size * 2);
+        }
+        tags[size] = tag;
+        items[size++] = item;
+    }
+
+    //Tag of the item on top, read it before pop().
+    int peekTag() {
+        return tags[size - 1];
+    }
+
+    Object pop() {
+        Object item = items[--size];
+        items[size] = null;
+        return item;
+    }
+
+    int size() {
+        return size;
+    }
+
+    //Drops everything above base, for walks that bail out early.
+    void truncate(int base) {
+        while (size > base) {
+            items[--size] = null;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.treepluginframework.component_architecture;
+
+import org.treepluginframework.events.EventAdapter;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/***
+ * The children of a TPFNode(parallelChildren = true) node, one plan per child, grouped into priority bands.
+ * Bands run one after the other. Inside a band, the children run as ForkJoin tasks if none of their subtrees overlap,
+ * otherwise the band just runs in order on the calling thread.
+ * Each child plan goes back through the dispatcher (PlanRunner), so metrics, propagation logs and tick budget deferral
+ * work the same as in the main walk.
+ *
+ * stopPropagation: the children still running stop at their next handler, and no later band (or anything after the parent) runs.
+ * A handler that throws fails the whole emit, the exception comes out of invoke on the dispatching thread.
+ */
+final class ParallelSection {
+    interface PlanRunner {
+        void run(DispatchPlan plan, EventAdapter<?> adapter, SectionWalk walk);
+    }
+
+    final DispatchPlan[][] bands;
+    final boolean[] independent;
+    //Summed over every child plan, and the deepest one plus one for the children themselves. See DispatchPlan.handlerCount.
+    final int handlerCount;
+    final int maxDepth;
+    final boolean hasRoutes;
+    private final PlanRunner runner;
+
+    ParallelSection(DispatchPlan[][] bands, boolean[] independent, PlanRunner runner) {
+        this.bands = bands;
+        this.independent = independent;
+        this.runner = runner;
+        int count = 0;
+        int deepest = 0;
+        boolean routed = false;
+        for (DispatchPlan[] plans : bands) {
+            for (DispatchPlan plan : plans) {
+                count += plan.handlerCount;
+                deepest = Math.max(deepest, plan.maxDepth + 1);
+                routed |= plan.hasRoutes;
+            }
+        }
+        this.handlerCount = count;
+        this.maxDepth = deepest;
+        this.hasRoutes = routed;
+    }
+
+    //walk is for the section's children, see SectionWalk.below.
+    void run(EventAdapter<?> adapter, SectionWalk walk) {
+        for (int band = 0; band < bands.length; band++) {
+            DispatchPlan[] plans = bands[band];
+            if (independent[band] && plans.length > 1) {
+                if (ForkJoinTask.inForkJoinPool()) {
+                    new BandTask(plans, adapter, walk).invoke();
+                } else {
+                    ForkJoinPool.commonPool().invoke(new BandTask(plans, adapter, walk));
+                }
+            } else {
+                for (DispatchPlan plan : plans) {
+                    runner.run(plan, adapter, walk);
+                    if (adapter.isPropagationStopped()) return;
+                }
+            }
+            if (adapter.isPropagationStopped()) return;
+        }
+    }
+
+    private final class BandTask extends RecursiveAction {
+        private final DispatchPlan[] plans;
+        private final EventAdapter<?> adapter;
+        private final SectionWalk walk;
+
+        BandTask(DispatchPlan[] plans, EventAdapter<?> adapter, SectionWalk walk) {
+            this.plans = plans;
+            this.adapter = adapter;
+            this.walk = walk;
+        }
+
+        @Override
+        protected void compute() {
+            ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[plans.length];
+            for (int i = 0; i < plans.length; i++) {
+                DispatchPlan plan = plans[i];
+                tasks[i] = ForkJoinTask.adapt(() -> runner.run(plan, adapter, walk));
+            }
+            ForkJoinTask.invokeAll(tasks);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.treepluginframework.component_architecture;
+
+import java.util.*;
+
+/***
+ * The useSuperClasses handlers of one subscriber class, and what each concrete event class ended up resolving to.
+ * Each (subscriber class, event class) pair walks the hierarchy once, after that it's a single map lookup.
+ */
+final class PolymorphicHandlers {
+    static final PolymorphicHandlers NONE = new PolymorphicHandlers(Collections.emptyMap());
+
+    //Stands in for "nothing matched" in the resolved map, so misses get cached too.
+    private static final HandlerHolder NO_HANDLER = new HandlerHolder(null, -1, 0, false, false, false);
+
+    private final Map<Class<?>, HandlerHolder> declared;
+    private final Map<Class<?>, HandlerHolder> resolved = new HashMap<>();
+
+    private PolymorphicHandlers(Map<Class<?>, HandlerHolder> declared) {
+        this.declared = declared;
+    }
+
+    static PolymorphicHandlers of(Map<Class<?>, HandlerHolder> handlers) {
+        Map<Class<?>, HandlerHolder> declared = new HashMap<>();
+        for (Map.Entry<Class<?>, HandlerHolder> entry : handlers.entrySet()) {
+            if (entry.getValue().useSuperClasses) {
+                declared.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return declared.isEmpty() ? NONE : new PolymorphicHandlers(declared);
+    }
+
+    boolean isEmpty() {
+        return declared.isEmpty();
+    }
+
+    HandlerHolder resolve(Class<?> eventClass) {
+        if (declared.isEmpty()) return null;
+
+        HandlerHolder holder = resolved.get(eventClass);
+        if (holder == null) {
+            holder = closestMatch(eventClass);
+            resolved.put(eventClass, (holder == null) ? NO_HANDLER : holder);
+        }
+        return (holder == NO_HANDLER) ? null : holder;
+    }
+
+    //Closest superclass wins, then interfaces breadth first.
+    private HandlerHolder closestMatch(Class<?> eventClass) {
+        for (Class<?> current = eventClass.getSuperclass(); current != null; current = current.getSuperclass()) {
+            HandlerHolder holder = declared.get(current);
+            if (holder != null) return holder;
+        }
+
+        Deque<Class<?>> toVisit = new ArrayDeque<>();
+        Set<Class<?>> visited = new HashSet<>();
+        for (Class<?> current = eventClass; current != null; current = current.getSuperclass()) {
+            toVisit.addAll(Arrays.asList(current.getInterfaces()));
+        }
+        while (!toVisit.isEmpty()) {
+            Class<?> current = toVisit.poll();
+            if (!visited.add(current)) continue;
+            HandlerHolder holder = declared.get(current);
+            if (holder != null) return holder;
+            toVisit.addAll(Arrays.asList(current.getInterfaces()));
+        }
+        return null;
+    }
+}
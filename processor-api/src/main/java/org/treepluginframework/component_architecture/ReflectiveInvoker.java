@@ -0,0 +1,31 @@
+package org.treepluginframework.component_architecture;
+
+import org.treepluginframework.events.EventAdapter;
+import org.treepluginframework.events.EventInvoker;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+// Last resort, for handlers that can't be reached through a generated invoker or a method handle.
+final class ReflectiveInvoker implements EventInvoker {
+    final Method method;
+    final boolean expectsAdapter;
+
+    ReflectiveInvoker(Method method, boolean expectsAdapter) {
+        this.method = method;
+        this.expectsAdapter = expectsAdapter;
+    }
+
+    @Override
+    public void invoke(int handlerId, Object target, Object event, EventAdapter<?> adapter) throws Throwable {
+        try {
+            if (expectsAdapter) {
+                method.invoke(target, event, adapter);
+            } else {
+                method.invoke(target, event);
+            }
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.treepluginframework.component_architecture;
+
+/***
+ * How TPFEventDispatcher.register holds on to a component it adds to the graph.
+ */
+public enum Retention {
+    //The graph keeps the component alive until it's unregistered. How it's always worked.
+    STRONG,
+    //The graph only holds it weakly. Once nothing else references it, it gets garbage collected and is taken out of the graph
+    //(with its edges) between two events, the same as if it had been unregistered.
+    WEAK
+}
@@ -0,0 +1,125 @@
+package org.treepluginframework.component_architecture;
+
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.events.EventAdapter;
+import org.treepluginframework.events.EventHandlerFunction;
+import org.treepluginframework.events.EventInvoker;
+
+import java.lang.invoke.*;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/***
+ * Handlers for classes that don't have a generated invoker, like objects that are registered at runtime
+ * without ever going through the annotation processor.
+ * Every EventSubscription method is spun into a lambda by LambdaMetafactory once per class, and kept in a ClassValue,
+ * so calling it is a plain interface call that the JIT can inline.
+ */
+final class RuntimeInvokers {
+    private static final MethodType CONSUMER_SAM = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType ADAPTER_SAM = MethodType.methodType(void.class, Object.class, Object.class, EventAdapter.class);
+
+    private static final ClassValue<Map<Class<?>, HandlerHolder>> HANDLERS = new ClassValue<>() {
+        @Override
+        protected Map<Class<?>, HandlerHolder> computeValue(Class<?> type) {
+            return scan(type);
+        }
+    };
+
+    private RuntimeInvokers(){}
+
+    /***
+     * Event type -> handler for every EventSubscription method declared on the class.
+     * Classes without any subscriptions get an empty map.
+     */
+    static Map<Class<?>, HandlerHolder> handlersFor(Class<?> type){
+        return HANDLERS.get(type);
+    }
+
+    private static Map<Class<?>, HandlerHolder> scan(Class<?> type){
+        Map<Class<?>, HandlerHolder> handlers = new HashMap<>();
+        for (Method method : type.getDeclaredMethods()) {
+            EventSubscription annotation = method.getAnnotation(EventSubscription.class);
+            if (annotation == null) continue;
+
+            Class<?>[] params = method.getParameterTypes();
+            boolean expectsAdapter;
+            if (params.length == 1) {
+                expectsAdapter = false;
+            } else if (params.length == 2 && EventAdapter.class.isAssignableFrom(params[1])) {
+                expectsAdapter = true;
+            } else {
+                System.err.println("Invalid method signature for event handler: " + method +
+                        " in class: " + type.getName() + ". Accepted parameter types: " + Arrays.toString(params));
+                continue;
+            }
+
+            handlers.put(params[0], new HandlerHolder(createInvoker(type, method, expectsAdapter), 0, annotation.priority(), expectsAdapter, annotation.useSuperClasses(), annotation.deferrable()));
+        }
+        return handlers.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(handlers);
+    }
+
+    /***
+     * LambdaMetafactory first, a method handle if the lambda can't be spun (static methods, or a lookup without full privilege
+     * because the class is in another module/class loader), and reflection if the method can't even be unreflected.
+     */
+    static EventInvoker createInvoker(Class<?> type, Method method, boolean expectsAdapter){
+        MethodHandles.Lookup lookup;
+        MethodHandle target;
+        try {
+            lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            target = lookup.unreflect(method);
+        } catch (IllegalAccessException | SecurityException e) {
+            method.setAccessible(true);
+            return new ReflectiveInvoker(method, expectsAdapter);
+        }
+
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        if (!isStatic) {
+            try {
+                return spinLambda(lookup, target, expectsAdapter);
+            } catch (Throwable ignored) {
+                // Fall back to calling the handle directly
+            }
+        }
+
+        return new MethodHandleInvoker(target, isStatic, expectsAdapter);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EventInvoker spinLambda(MethodHandles.Lookup lookup, MethodHandle target, boolean expectsAdapter) throws Throwable {
+        MethodType instantiated = target.type().changeReturnType(void.class);
+        if (expectsAdapter) {
+            CallSite site = LambdaMetafactory.metafactory(lookup, "handle", MethodType.methodType(EventHandlerFunction.class),
+                    ADAPTER_SAM, target, instantiated);
+            EventHandlerFunction function = (EventHandlerFunction) site.getTarget().invokeExact();
+            return (handlerId, component, event, adapter) -> function.handle(component, event, adapter);
+        }
+
+        CallSite site = LambdaMetafactory.metafactory(lookup, "accept", MethodType.methodType(BiConsumer.class),
+                CONSUMER_SAM, target, instantiated);
+        BiConsumer<Object, Object> function = (BiConsumer<Object, Object>) site.getTarget().invokeExact();
+        return (handlerId, component, event, adapter) -> function.accept(component, event);
+    }
+
+    private static final class MethodHandleInvoker implements EventInvoker {
+        private final MethodHandle handle;
+
+        MethodHandleInvoker(MethodHandle target, boolean isStatic, boolean expectsAdapter) {
+            MethodHandle h = target;
+            if (isStatic) h = MethodHandles.dropArguments(h, 0, Object.class);
+            if (!expectsAdapter) h = MethodHandles.dropArguments(h, 2, EventAdapter.class);
+            this.handle = h.asType(ADAPTER_SAM);
+        }
+
+        @Override
+        public void invoke(int handlerId, Object target, Object event, EventAdapter<?> adapter) throws Throwable {
+            handle.invokeExact(target, event, adapter);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.treepluginframework.component_architecture;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * What the dispatcher keeps track of per emit, for the walk through one parallel section's children.
+ * Those can be running on several ForkJoin threads, so the handler count and deepest level are atomics that get
+ * added to the emit's own once the section is done, and the propagation logs start from the section's parent
+ * since there's no single last node across threads.
+ */
+final class SectionWalk {
+    //The node the children are under, origin of the first propagation log in each child.
+    final Object parent;
+    //How far below the emitting node the children are.
+    final int depthBase;
+    //Null unless the emit is being counted (countEmit).
+    private final AtomicInteger fanOut;
+    private final AtomicInteger depth;
+
+    private SectionWalk(Object parent, int depthBase, AtomicInteger fanOut, AtomicInteger depth) {
+        this.parent = parent;
+        this.depthBase = depthBase;
+        this.fanOut = fanOut;
+        this.depth = depth;
+    }
+
+    static SectionWalk start(Object parent, int depthBase, boolean counting) {
+        return counting ? new SectionWalk(parent, depthBase, new AtomicInteger(), new AtomicInteger())
+                : new SectionWalk(parent, depthBase, null, null);
+    }
+
+    //For a nested section or keyed children, depth levels below this walk's base. Shares the counts.
+    SectionWalk below(Object parent, int depth) {
+        return new SectionWalk(parent, depthBase + depth, fanOut, this.depth);
+    }
+
+    boolean counting() {
+        return fanOut != null;
+    }
+
+    //A handler at depth (relative to depthBase) is about to run.
+    void count(int handlerDepth) {
+        fanOut.incrementAndGet();
+        depth.accumulateAndGet(depthBase + handlerDepth, Math::max);
+    }
+
+    int fanOut() {
+        return fanOut.get();
+    }
+
+    int depth() {
+        return depth.get();
+    }
+}
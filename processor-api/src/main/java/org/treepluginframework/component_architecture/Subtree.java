@@ -0,0 +1,97 @@
+package org.treepluginframework.component_architecture;
+
+import java.util.*;
+
+/***
+ * A batch of new components and the edges between them, for TPFEventDispatcher.registerSubtree (or DAG.addSubtree).
+ * Built from the root down: every add names a parent that's already in the subtree, so it can't contain a cycle,
+ * and attaching it only has to check the one edge from the parent it goes under.
+ *
+ *     Subtree arena = Subtree.builder(arenaRoot)
+ *             .add(arenaRoot, spawner)
+ *             .add(spawner, wave)
+ *             .build();
+ *     dispatcher.registerSubtree(world, arena);
+ */
+public final class Subtree {
+    //nodes[0] is the root, every node comes after all of its parents.
+    final Object[] nodes;
+    //Edge i goes from nodes[edgeFrom[i]] to nodes[edgeTo[i]].
+    final int[] edgeFrom;
+    final int[] edgeTo;
+
+    private Subtree(Object[] nodes, int[] edgeFrom, int[] edgeTo) {
+        this.nodes = nodes;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+    }
+
+    public static Builder builder(Object root) {
+        return new Builder(root);
+    }
+
+    public Object getRoot() {
+        return nodes[0];
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public static final class Builder {
+        private final List<Object> nodes = new ArrayList<>();
+        //Identity, same as the DAG. Position in nodes.
+        private final Map<Object, Integer> indexOf = new IdentityHashMap<>();
+        private int[] edgeFrom = new int[16];
+        private int[] edgeTo = new int[16];
+        private int edgeCount = 0;
+        //Parent each node was first added under, so adding the same edge twice is caught without a set of every edge.
+        private int[] firstParent = new int[16];
+        //Edges to nodes that already had a parent. Only exists once there's one.
+        private Set<Long> extraEdges;
+
+        private Builder(Object root) {
+            if (root == null) throw new IllegalArgumentException("Root cannot be null");
+            nodes.add(root);
+            indexOf.put(root, 0);
+            firstParent[0] = -1;
+        }
+
+        /***
+         * child goes under parent, which has to be the root or something added before. A child can be added under more
+         * than one parent, as long as each of them was in the subtree before the child was.
+         */
+        public Builder add(Object parent, Object child) {
+            if (child == null) throw new IllegalArgumentException("Child cannot be null");
+            Integer from = indexOf.get(parent);
+            if (from == null) throw new IllegalArgumentException(parent + " isn't in the subtree yet, add it before its children");
+
+            Integer to = indexOf.get(child);
+            if (to == null) {
+                to = nodes.size();
+                nodes.add(child);
+                indexOf.put(child, to);
+                if (to == firstParent.length) firstParent = Arrays.copyOf(firstParent, to * 2);
+                firstParent[to] = from;
+            } else if (to <= from) {
+                throw new IllegalArgumentException("Adding edge from " + parent + " to " + child + " would create a cycle.");
+            } else {
+                if (extraEdges == null) extraEdges = new HashSet<>();
+                if (firstParent[to] == from || !extraEdges.add(((long) from << 32) | to)) return this;
+            }
+
+            if (edgeCount == edgeFrom.length) {
+                edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+                edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+            }
+            edgeFrom[edgeCount] = from;
+            edgeTo[edgeCount] = to;
+            edgeCount++;
+            return this;
+        }
+
+        public Subtree build() {
+            return new Subtree(nodes.toArray(), Arrays.copyOf(edgeFrom, edgeCount), Arrays.copyOf(edgeTo, edgeCount));
+        }
+    }
+}
@@ -2,6 +2,8 @@ package org.treepluginframework.component_architecture;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.treepluginframework.hooks.TPFEventLog;
+import org.treepluginframework.hooks.TPFHookBus;
+import org.treepluginframework.metrics.MetricsSnapshot;
 import org.treepluginframework.values.TPFEventFile;
 import org.treepluginframework.values.TPFMetadataFile;
 
@@ -21,6 +23,11 @@ public class TPF {
     private static final Logger logger = Logger.getLogger(TPF.class.getName());
 
     private UUID tpfUUID = UUID.randomUUID();
+    //Ids of every node in the DAG, prefixed with tpfUUID.
+    private final TPFNodeIds nodeIds = new TPFNodeIds(tpfUUID);
+
+    //Everything this TPF logs goes through here. Attach a sink before start() to see the startup logs too.
+    private final TPFHookBus hooks = new TPFHookBus();
 
 
     public TPF(File globalConfigurationFile){
@@ -43,6 +50,24 @@ public class TPF {
         return this.eventDispatcher;
     }
 
+    public TPFHookBus getHooks(){
+        return this.hooks;
+    }
+
+    //Turns the node ids in the hook logs into UUIDs. getEventDispatcher().getNode(id) turns them back into nodes.
+    public TPFNodeIds getNodeIds(){
+        return this.nodeIds;
+    }
+
+    /***
+     * Per handler and per event type timings, only recorded when the JVM runs with -Dtpf.metrics=true.
+     * new PrometheusExporter(tpf::getMetrics) writes them out for Prometheus.
+     */
+    public MetricsSnapshot getMetrics(){
+        if(eventDispatcher == null) return MetricsSnapshot.EMPTY;
+        return eventDispatcher.getMetrics().snapshot();
+    }
+
     /*
         In case multiple configuration files are needed for whatever reason.
 
@@ -77,10 +102,13 @@ public class TPF {
                 hasEvent ? eventFile : null,
                 hasMetadata ? nodeRepository : null
         );
+        eventDispatcher.setHooks(hooks);
+        eventDispatcher.setNodeIds(nodeIds);
     }
 
     private void setupMetadataRelatedComponents(File configurationFile) {
         this.valueRepository = new TPFValueRepository(this.metadataFile);
+        valueRepository.setHooks(hooks);
         if(configurationFile != null){
             valueRepository.addGlobalConfigurationFile(configurationFile);
         }
@@ -141,8 +169,9 @@ public class TPF {
         this.valueRepository.injectFields(ob);
     }
 
-    private void tpfLogEvent(TPFEventLog log){
-
+    //Callers check hooks.wants first, so nothing gets built when nobody is listening.
+    void tpfLogEvent(TPFEventLog log){
+        hooks.publish(log);
     }
 
 
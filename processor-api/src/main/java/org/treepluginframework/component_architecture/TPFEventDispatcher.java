@@ -1,82 +1,914 @@
 package org.treepluginframework.component_architecture;
 
+import org.treepluginframework.annotations.TPFNode;
 import org.treepluginframework.events.EventAdapter;
+import org.treepluginframework.events.EventDirection;
+import org.treepluginframework.events.EventInvoker;
 import org.treepluginframework.events.IEvent;
 import org.treepluginframework.events.NativeEventAdapter;
+import org.treepluginframework.hooks.TPFEventCompletionLog;
+import org.treepluginframework.hooks.TPFEventPropagationLog;
+import org.treepluginframework.hooks.TPFEventStartLog;
+import org.treepluginframework.hooks.TPFHookBus;
+import org.treepluginframework.hooks.dag.TPFDAGAdditionLog;
+import org.treepluginframework.hooks.dag.TPFDAGDeletionLog;
+import org.treepluginframework.hooks.dag.TPFDAGEdgeAdditionLog;
+import org.treepluginframework.jfr.TPFDispatchEvent;
+import org.treepluginframework.jfr.TPFFlightRecorder;
+import org.treepluginframework.journal.EventJournal;
+import org.treepluginframework.metrics.DispatchMetrics;
 import org.treepluginframework.values.ConstructorInformation;
 import org.treepluginframework.values.MethodSignature;
 import org.treepluginframework.values.TPFEventFile;
 import org.treepluginframework.values.TPFMetadataFile;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TPFEventDispatcher {
     private DAG graph = new DAG();
 
     private HashMap<Class<?>, HashMap<Class<?>, HandlerHolder>> cachedMethods = new HashMap<>();
 
-    private List<Object[]> queuedObjects = new ArrayList<>();
+    //Dense ids for every event type something in the graph subscribes to, used by the DAG's subtree interest bitsets.
+    private final HashMap<Class<?>, Integer> eventTypeIds = new HashMap<>();
+    private final HashMap<Class<?>, BitSet> classInterests = new HashMap<>();
+    //Concrete event class -> ids of it and every supertype that has an id. A node might take it through useSuperClasses on any of those.
+    private final HashMap<Class<?>, BitSet> eventMasks = new HashMap<>();
+
+    private final ClassValue<PolymorphicHandlers> polymorphicHandlers = new ClassValue<>() {
+        @Override
+        protected PolymorphicHandlers computeValue(Class<?> componentClass) {
+            return PolymorphicHandlers.of(handlersOf(componentClass));
+        }
+    };
+
+    //Root the event is emitted from -> event type -> compiled plan. Identity, same as the DAG.
+    private final Map<Object, Map<Class<?>, DispatchPlan>> dispatchPlans = new IdentityHashMap<>();
+
+    //Node -> it and its ancestors, for UP events. Built the first time a node sends one.
+    private final Map<Object, AncestorChain> ancestorChains = new IdentityHashMap<>();
+
+    private DeliveryMode deliveryMode = DeliveryMode.PER_PATH;
+    //Epoch of the plan being compiled, 0 when every path gets delivered to.
+    private int compileEpoch = 0;
+    //EXACTLY_ONCE: compiling only deduplicates inside one plan, and keyed children are plans of their own. So once an emit
+    //runs a plan with a KeyedRoute, every node it delivers to goes in emitVisited and ones already in there are skipped.
+    //exactlyOnceEmit is whether the emit being dispatched needs that at all, emitVisited is null until it turns out to.
+    //One set per nesting level, reused, so it doesn't allocate once warmed up.
+    private boolean exactlyOnceEmit;
+    private VisitedNodes emitVisited;
+    private VisitedNodes[] visitedPool = new VisitedNodes[4];
+
+    //Plans only get compiled on the thread that's dispatching, so one stack covers every walk.
+    private final NodeStack compileStack = new NodeStack(64);
+
+    //Registrations and removals that have to wait until the current event is done. Any thread can add to it
+    //(ForkJoin threads for parallelChildren, anything at all in concurrent mode), only the dispatching thread applies it.
+    private final Queue<PendingChange> pendingChanges = new ConcurrentLinkedQueue<>();
+
+    //Marker on the compile stack, see DispatchPlan.subtreeEnds.
+    private record SubtreeEnd(int entry) {
+    }
+
+    private enum ChangeKind { REGISTER, UNREGISTER, REGISTER_SUBTREE, UNREGISTER_SUBTREE }
+
+    //component is the Subtree for REGISTER_SUBTREE.
+    private record PendingChange(ChangeKind kind, Object parent, Object component, Object key, Retention retention) {
+    }
+
+    //Components registered with Retention.WEAK, see register(Object, Object, Retention).
+    private final WeakComponents weakComponents = new WeakComponents();
+
+    //Off by default, see setConcurrentMode.
+    private volatile boolean concurrentMode = false;
+    //Bumped every time queued changes get applied, so other threads can tell when theirs went in.
+    private volatile long graphVersion = 0;
+
+    //How many parallel sections are running. While any are, the graph can't change, so registering gets deferred.
+    private final AtomicInteger parallelSections = new AtomicInteger();
+    //Emits made while a parallel section was running, dispatched by the dispatching thread once it's done. See queueEmit.
+    private final ConcurrentLinkedQueue<Runnable> sectionEmits = new ConcurrentLinkedQueue<>();
+
+    private static final ClassValue<Boolean> PARALLEL_CHILDREN = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            TPFNode annotation = type.getAnnotation(TPFNode.class);
+            return annotation != null && annotation.parallelChildren();
+        }
+    };
 
     private TPFEventFile eventFile;
     private TPFMetadataFile metaFile;
 
     private TPFNodeRepository nodeRepository;
 
-    private boolean dispatchOnGoing = false;
+    //Nested emits (a handler emitting) only count once, the queue gets applied when the outermost one finishes.
+    private int dispatchDepth = 0;
+    private volatile Thread dispatchThread;
+
+    //Set while a TickScheduler tick is being dispatched. Only that emit defers, not ones its handlers start, since those could be using pooled adapters.
+    private TickBudget tickBudget;
+    private int tickBudgetDepth;
+
+    //See setJournal. Null unless someone wants a recording.
+    private volatile EventJournal journal;
+
+    //Reused by emit(Object, IEvent), indexed by dispatchDepth, so steady state emitting doesn't allocate.
+    private NativeEventAdapter[] adapterPool = new NativeEventAdapter[4];
+
+    //Started by the first emitAsync, or by configureAsync.
+    private volatile AsyncEmitQueue asyncQueue;
+
+    //Only recorded into when DispatchMetrics.ENABLED (-Dtpf.metrics=true).
+    private final DispatchMetrics metrics = new DispatchMetrics();
+    //Handlers called and deepest level reached by the emit being dispatched, and how deep the root of the current
+    //walk is below the emitting node (keyed children get walked as their own roots). Only counted while countEmit is set,
+    //which is whenever metrics are on or a JFR recording has TPFDispatchEvent enabled.
+    private boolean countEmit;
+    private int emitFanOut;
+    private int emitDepth;
+    private int emitDepthBase;
+
+    //See setHooks. traceEmit is whether the emit being dispatched got sampled, the other two are what its logs need.
+    private volatile TPFHookBus hooks = new TPFHookBus();
+    private boolean traceEmit;
+    private long traceStartSequence;
+    private Object traceLastNode;
 
     public TPFEventDispatcher(TPFMetadataFile metaFile, TPFEventFile eventFile, TPFNodeRepository nodeRepository){
         this.metaFile = metaFile;
         this.eventFile = eventFile;
         this.nodeRepository = nodeRepository;
         calculateCachedMethods();
+        graph.setInterestResolver(node -> interestsOf(WeakComponent.classOf(node)));
+        graph.setPriorityResolver((node, eventType) -> {
+            HandlerHolder handler = resolveHandler(WeakComponent.classOf(node), eventType);
+            return handler == null ? DAG.NO_HANDLER : handler.priority;
+        });
     }
 
     public void register(Object parent, Object component, boolean afterCurrentEvent){
-        if(!afterCurrentEvent)
+        if(afterCurrentEvent || mustDefer())
+        {
+            pendingChanges.add(new PendingChange(ChangeKind.REGISTER, parent, component, null, Retention.STRONG));
+        }
+        else
         {
-            graph.addEdge(parent, component);
+            addToGraph(parent, component, null, Retention.STRONG);
+        }
+    }
+
+    /***
+     * With Retention.WEAK the graph doesn't keep component alive. Once the rest of the program drops it, it's taken out of the graph
+     * between two events as if it had been unregistered, so components that get attached and then forgotten don't pile up.
+     * Handlers still get the component itself, emit and unregister still take it too.
+     * Only the first registration of a component decides, registering it again under another parent keeps whatever it already is.
+     * Register a whole subtree weakly for all of it to go away on its own, a strong child of a weak node stays after its parent is gone.
+     */
+    public void register(Object parent, Object component, Retention retention){
+        if (retention == null) throw new IllegalArgumentException("Retention cannot be null");
+        if(mustDefer())
+        {
+            pendingChanges.add(new PendingChange(ChangeKind.REGISTER, parent, component, null, retention));
         }
         else
         {
-            queuedObjects.add(new Object[]{parent,component});
+            addToGraph(parent, component, null, retention);
+        }
+    }
+
+    /***
+     * Registers component under parent with a routing key. It only gets events whose IEvent.routingKey (EventAdapter.getRoutingKey)
+     * equals key, found with a hash lookup instead of going through every child, plus events with no key at all.
+     * Keyed children get events after the parent's other children. A null key is a normal registration.
+     */
+    public void register(Object parent, Object component, Object key){
+        if(mustDefer())
+        {
+            pendingChanges.add(new PendingChange(ChangeKind.REGISTER, parent, component, key, Retention.STRONG));
+        }
+        else
+        {
+            addToGraph(parent, component, key, Retention.STRONG);
         }
     }
 
     public void unregister(Object obj){
+        if(mustDefer()){
+            pendingChanges.add(new PendingChange(ChangeKind.UNREGISTER, null, obj, null, Retention.STRONG));
+            return;
+        }
+        removeFromGraph(obj);
+    }
+
+    /***
+     * Adds every component in subtree, with its root under parent, in one go: one check for a cycle at parent, one walk up
+     * to throw out the cached plans that go through parent, and handlers resolved once per component.
+     * None of the subtree's components can be registered already.
+     */
+    public void registerSubtree(Object parent, Subtree subtree){
+        registerSubtree(parent, subtree, Retention.STRONG);
+    }
+
+    //retention applies to every component in the subtree, see register(Object, Object, Retention).
+    public void registerSubtree(Object parent, Subtree subtree, Retention retention){
+        if (subtree == null) throw new IllegalArgumentException("Subtree cannot be null");
+        if (retention == null) throw new IllegalArgumentException("Retention cannot be null");
+        if(mustDefer())
+        {
+            pendingChanges.add(new PendingChange(ChangeKind.REGISTER_SUBTREE, parent, subtree, null, retention));
+        }
+        else
+        {
+            addSubtreeToGraph(parent, subtree, retention);
+        }
+    }
+
+    /***
+     * Unregisters root and everything under it that isn't also registered under something else (see DAG.getSubtree).
+     * Costs the size of the subtree, not one unregister per component: the cached plans above root get thrown out in one walk.
+     */
+    public void unregisterSubtree(Object root){
+        if(mustDefer()){
+            pendingChanges.add(new PendingChange(ChangeKind.UNREGISTER_SUBTREE, null, root, null, Retention.STRONG));
+            return;
+        }
+        removeSubtreeFromGraph(root);
+    }
+
+    /***
+     * In concurrent mode register and unregister can be called from any thread. Unless it's the thread that's dispatching
+     * right now (a handler registering), the change is queued and applied by the dispatching thread before the next event starts,
+     * so every event sees the graph as it was when it started, and dispatch never has to lock anything.
+     * Only one thread should be emitting at a time, emitAsync's drain thread is the easy way to get that.
+     */
+    public void setConcurrentMode(boolean enabled){
+        this.concurrentMode = enabled;
+    }
+
+    /***
+     * With EXACTLY_ONCE a node with several parents only handles each event once, instead of once per parent.
+     * Duplicates are dropped when the dispatch plan gets compiled, so emitting doesn't pay anything for it. The exception
+     * is an emit that reaches keyed children, each of those is a plan of its own, so that emit keeps a set of the nodes it
+     * already delivered to.
+     */
+    public void setDeliveryMode(DeliveryMode deliveryMode){
+        if (deliveryMode == null) throw new IllegalArgumentException("Delivery mode cannot be null");
+        if (this.deliveryMode == deliveryMode) return;
+        this.deliveryMode = deliveryMode;
+        invalidateAllPlans();
+    }
+
+    public DeliveryMode getDeliveryMode(){
+        return deliveryMode;
+    }
+
+    public boolean isConcurrentMode(){
+        return concurrentMode;
+    }
+
+    //Goes up by one every time a batch of queued changes is applied.
+    public long getGraphVersion(){
+        return graphVersion;
+    }
+
+    //While a parallel section runs the graph can't change, and in concurrent mode only the dispatching thread gets to touch it.
+    private boolean mustDefer(){
+        if(parallelSections.get() != 0) return true;
+        return concurrentMode && Thread.currentThread() != dispatchThread;
+    }
+
+    private void addToGraph(Object parent, Object component, Object key, Retention retention){
+        Object node = graphNodeOf(component);
+        boolean added = !graph.containsNode(node);
+        if(added && retention == Retention.WEAK && component != null) node = weakComponents.add(component);
+        //After the stand in exists, so registering a weak component under itself is still refused as a cycle.
+        Object parentNode = graphNodeOf(parent);
+        try {
+            graph.addEdge(parentNode, node, key);
+        } catch (IllegalArgumentException e) {
+            if(added && node instanceof WeakComponent weak) weakComponents.remove(weak);
+            throw e;
+        }
+        invalidatePlans(parentNode);
+        invalidateAncestorChains(node);
+        logAddition(parentNode, node, added);
+    }
+
+    //What the graph holds for component: its WeakComponent if it was registered weakly, otherwise the component itself.
+    private Object graphNodeOf(Object component){
+        if(component == null || weakComponents.isEmpty()) return component;
+        WeakComponent weak = weakComponents.get(component);
+        return weak == null ? component : weak;
+    }
+
+    //Takes every weak component that's been collected out of the graph. Only between events, like the pending changes.
+    private void sweepCollected(){
+        if(weakComponents.isEmpty()) return;
+        WeakComponent collected;
+        boolean swept = false;
+        while((collected = weakComponents.pollCollected()) != null)
+        {
+            //Already gone if it was unregistered before it got collected.
+            if(!weakComponents.remove(collected)) continue;
+            removeFromGraph(collected);
+            swept = true;
+        }
+        if(swept) graphVersion++;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void removeFromGraph(Object component){
+        Object obj = graphNodeOf(component);
+        if(obj instanceof WeakComponent weak) weakComponents.remove(weak);
+        TPFHookBus bus = hooks;
+        long removedId = bus.isActive() ? graph.getId(obj) : TPFNodeIds.NONE;
+        invalidatePlans(obj);
+        invalidateAncestorChains(obj);
+        dispatchPlans.remove(obj);
         graph.removeNode(obj);
+        if(removedId != TPFNodeIds.NONE && bus.wants(TPFDAGDeletionLog.class)){
+            TPFDAGDeletionLog log = new TPFDAGDeletionLog();
+            log.dagId = removedId;
+            log.dagUUID = graph.nodeIds().toUUID(removedId);
+            bus.publish(log);
+        }
+    }
+
+    private void addSubtreeToGraph(Object parent, Subtree subtree, Retention retention){
+        Object parentNode = graphNodeOf(parent);
+        Object[] nodes = subtree.nodes;
+        if(!weakComponents.isEmpty() || retention == Retention.WEAK){
+            nodes = nodes.clone();
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = graphNodeOf(nodes[i]);
+            }
+        }
+        if(retention == Retention.WEAK){
+            //Before the stand ins exist, so nothing's left in weakComponents if the DAG refuses it.
+            graph.checkSubtree(parentNode, nodes);
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = weakComponents.add(nodes[i]);
+            }
+        }
+        graph.addSubtree(parentNode, subtree, nodes);
+        invalidatePlans(parentNode);
+
+        TPFHookBus bus = hooks;
+        if(!bus.isActive()) return;
+        for (Object node : nodes) {
+            logAddition(null, node, true);
+        }
+        if(parentNode != null) logAddition(parentNode, nodes[0], false);
+        for (int e = 0; e < subtree.edgeFrom.length; e++) {
+            logAddition(nodes[subtree.edgeFrom[e]], nodes[subtree.edgeTo[e]], false);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void removeSubtreeFromGraph(Object component){
+        Object root = graphNodeOf(component);
+        List<Object> subtree = graph.getSubtree(root);
+        if(subtree.isEmpty()) return;
+
+        TPFHookBus bus = hooks;
+        long[] removedIds = null;
+        if(bus.wants(TPFDAGDeletionLog.class)){
+            removedIds = new long[subtree.size()];
+            for (int i = 0; i < removedIds.length; i++) {
+                removedIds[i] = graph.getId(subtree.get(i));
+            }
+        }
+
+        //Every plan the subtree is part of is rooted at root, above it, or inside it. The walk up from root gets the first two.
+        invalidatePlans(root);
+        invalidateAncestorChains(root);
+        for (Object node : subtree) {
+            Map<Class<?>, DispatchPlan> rootPlans = dispatchPlans.remove(node);
+            if(rootPlans != null){
+                for(DispatchPlan plan : rootPlans.values()){
+                    plan.invalidated = true;
+                }
+            }
+            if(node instanceof WeakComponent weak) weakComponents.remove(weak);
+        }
+        graph.removeNodes(subtree);
+
+        if(removedIds == null) return;
+        for (long removedId : removedIds) {
+            TPFDAGDeletionLog log = new TPFDAGDeletionLog();
+            log.dagId = removedId;
+            log.dagUUID = graph.nodeIds().toUUID(removedId);
+            bus.publish(log);
+        }
     }
 
-    // For events that implement IEvent — wraps them in a NativeEventAdapter
+    @SuppressWarnings("deprecation")
+    private void logAddition(Object parent, Object component, boolean added){
+        TPFHookBus bus = hooks;
+        if(added && bus.wants(TPFDAGAdditionLog.class)){
+            TPFDAGAdditionLog log = new TPFDAGAdditionLog();
+            log.dagId = graph.getId(component);
+            log.dagUUID = graph.nodeIds().toUUID(log.dagId);
+            bus.publish(log);
+        }
+        if(parent != null && bus.wants(TPFDAGEdgeAdditionLog.class)){
+            TPFDAGEdgeAdditionLog log = new TPFDAGEdgeAdditionLog();
+            log.parentId = graph.getId(parent);
+            log.childId = graph.getId(component);
+            log.parentUUID = graph.nodeIds().toUUID(log.parentId);
+            log.childUUID = graph.nodeIds().toUUID(log.childId);
+            bus.publish(log);
+        }
+    }
+
+    /***
+     * Bus the dispatcher publishes event start/propagation/completion and graph changes to. TPF hands it its own.
+     * Nothing gets built unless the bus has a sink (or is recording), see TPFHookBus.wants.
+     */
+    public void setHooks(TPFHookBus hooks){
+        if (hooks == null) throw new IllegalArgumentException("Hooks cannot be null");
+        this.hooks = hooks;
+    }
+
+    public TPFHookBus getHooks(){
+        return hooks;
+    }
+
+    /***
+     * Where the graph's node ids come from, the ids in every DAG and propagation log. TPF hands it its own.
+     * Has to be set before setUpDAG.
+     */
+    public void setNodeIds(TPFNodeIds nodeIds){
+        if (nodeIds == null) throw new IllegalArgumentException("Node ids cannot be null");
+        graph.setNodeIds(nodeIds);
+    }
+
+    public TPFNodeIds getNodeIds(){
+        return graph.nodeIds();
+    }
+
+    //The node a log's id points at, null once it's been unregistered.
+    public Object getNode(long nodeId){
+        Object node = graph.getNode(nodeId);
+        return node == null ? null : WeakComponent.componentOf(node);
+    }
+
+    /***
+     * For events that implement IEvent — wraps them in a NativeEventAdapter.
+     * The adapter is pooled and gets reused by the next emit, so handlers shouldn't keep it around after they return.
+     */
     public void emit(Object fromComponent, IEvent event){
         if (event == null) throw new IllegalArgumentException("Event cannot be null");
-        dispatchOnGoing = true;
-        dispatch(fromComponent, new NativeEventAdapter(event));
-        finishedDispatch();
+        if (parallelSections.get() != 0) {
+            NativeEventAdapter adapter = new NativeEventAdapter(event);
+            queueEmit(() -> emit(fromComponent, adapter));
+            return;
+        }
+        beginDispatch();
+        NativeEventAdapter adapter = pooledAdapter(event);
+        try {
+            journal(fromComponent, adapter);
+            dispatchRoot(fromComponent, adapter);
+        } finally {
+            adapter.reset(null);
+            finishedDispatch();
+        }
     }
 
     // For external or generic events — assumes a custom adapter is already provided
     public void emit(Object fromComponent, EventAdapter<?> adapter){
         if (adapter == null) throw new IllegalArgumentException("Adapter cannot be null");
-        dispatchOnGoing = true;
-        dispatch(fromComponent, adapter);
-        finishedDispatch();
+        if (parallelSections.get() != 0) {
+            queueEmit(() -> emit(fromComponent, adapter));
+            return;
+        }
+        beginDispatch();
+        try {
+            journal(fromComponent, adapter);
+            dispatchRoot(fromComponent, adapter);
+        } finally {
+            finishedDispatch();
+        }
+    }
+
+    /***
+     * Emits every event in one go. The dispatch order gets resolved once per event type, and each handler
+     * runs every event before the next handler gets any of them. An event that calls stopPropagation stops for that
+     * event only, the rest of the batch keeps going. Anything registered with afterCurrentEvent is added once the whole batch is done.
+     */
+    public void emitAll(Object fromComponent, List<? extends IEvent> events){
+        if (events == null) throw new IllegalArgumentException("Events cannot be null");
+        List<EventAdapter<?>> adapters = new ArrayList<>(events.size());
+        for (IEvent event : events) {
+            if (event == null) throw new IllegalArgumentException("Event cannot be null");
+            adapters.add(new NativeEventAdapter(event));
+        }
+        emitAllAdapters(fromComponent, adapters);
+    }
+
+    public void emitAllAdapters(Object fromComponent, List<? extends EventAdapter<?>> adapters){
+        if (adapters == null) throw new IllegalArgumentException("Adapters cannot be null");
+        for (EventAdapter<?> adapter : adapters) {
+            if (adapter == null) throw new IllegalArgumentException("Adapter cannot be null");
+        }
+        if (parallelSections.get() != 0) {
+            List<EventAdapter<?>> queued = new ArrayList<>(adapters);
+            queueEmit(() -> emitAllAdapters(fromComponent, queued));
+            return;
+        }
+        beginDispatch();
+        try {
+            for (EventAdapter<?> adapter : adapters) {
+                journal(fromComponent, adapter);
+            }
+            //Runs of the same type share a plan. Different types in one list just get split up, in order.
+            int start = 0;
+            while (start < adapters.size()) {
+                //UP events don't walk a plan, so they just go one at a time.
+                if (adapters.get(start).getDirection() != EventDirection.DOWN) {
+                    dispatchRoot(fromComponent, adapters.get(start));
+                    start++;
+                    continue;
+                }
+                Class<?> eventType = adapters.get(start).getEffectiveEventType();
+                int end = start + 1;
+                while (end < adapters.size() && adapters.get(end).getEffectiveEventType() == eventType
+                        && adapters.get(end).getDirection() == EventDirection.DOWN) end++;
+                dispatchBatchRoot(fromComponent, eventType, adapters.subList(start, end));
+                start = end;
+            }
+        } finally {
+            finishedDispatch();
+        }
+    }
+
+    /***
+     * Queues the event and returns right away. The future completes with the adapter once every handler has run,
+     * exceptionally if one of them threw, or gets cancelled if DROP_OLDEST threw it out of the queue.
+     * Everything queued is dispatched by a single thread in the order it was queued.
+     * Only one thread can emit at a time, so don't call emit from other threads while async events are being drained.
+     * Registering from other threads is fine in concurrent mode, see setConcurrentMode.
+     */
+    public CompletableFuture<EventAdapter<?>> emitAsync(Object fromComponent, IEvent event){
+        if (event == null) throw new IllegalArgumentException("Event cannot be null");
+        return asyncQueue().submit(fromComponent, new NativeEventAdapter(event));
+    }
+
+    public CompletableFuture<EventAdapter<?>> emitAsync(Object fromComponent, EventAdapter<?> adapter){
+        if (adapter == null) throw new IllegalArgumentException("Adapter cannot be null");
+        return asyncQueue().submit(fromComponent, adapter);
+    }
+
+    /***
+     * Sets up the queue emitAsync uses. Has to be called before the first emitAsync, otherwise it gets
+     * 1024 slots, BLOCK and a virtual thread.
+     */
+    public synchronized void configureAsync(int capacity, BackPressurePolicy policy, boolean virtualThread){
+        if (policy == null) throw new IllegalArgumentException("Policy cannot be null");
+        if (asyncQueue != null) throw new IllegalStateException("Async dispatch has already been started");
+        asyncQueue = new AsyncEmitQueue(capacity, policy, virtualThread, this::emit);
+    }
+
+    //Lets whatever is already queued finish, then stops the drain thread. Any emitAsync after this is rejected.
+    public void shutdownAsync(boolean waitForQueue) throws InterruptedException {
+        AsyncEmitQueue queue = asyncQueue;
+        if (queue == null) return;
+        queue.shutdown();
+        if (waitForQueue) queue.awaitTermination();
+    }
+
+    private AsyncEmitQueue asyncQueue(){
+        AsyncEmitQueue queue = asyncQueue;
+        if (queue != null) return queue;
+        synchronized (this) {
+            if (asyncQueue == null) {
+                asyncQueue = new AsyncEmitQueue(1024, BackPressurePolicy.BLOCK, true, this::emit);
+            }
+            return asyncQueue;
+        }
+    }
+
+    //Emit for TickScheduler, deferrable handlers get skipped (and queued on the budget) once it runs out.
+    void emit(Object fromComponent, EventAdapter<?> adapter, TickBudget budget){
+        emit(fromComponent, adapter, budget, false);
+    }
+
+    /***
+     * A subtree an earlier tick deferred. Not journaled, replaying the tick it came from already runs it.
+     * It was deferred on the way down, so it goes down from node even if the event itself climbs to an endpoint first.
+     */
+    void resumeDeferred(Object node, EventAdapter<?> adapter, TickBudget budget){
+        emit(node, adapter, budget, true);
+    }
+
+    private void emit(Object fromComponent, EventAdapter<?> adapter, TickBudget budget, boolean resume){
+        if (adapter == null) throw new IllegalArgumentException("Adapter cannot be null");
+        beginDispatch();
+        TickBudget outerBudget = tickBudget;
+        int outerDepth = tickBudgetDepth;
+        tickBudget = budget;
+        tickBudgetDepth = dispatchDepth;
+        try {
+            if(!resume) journal(fromComponent, adapter);
+            dispatchRoot(fromComponent, adapter, resume);
+        } finally {
+            tickBudget = outerBudget;
+            tickBudgetDepth = outerDepth;
+            finishedDispatch();
+        }
+    }
+
+    boolean isRegistered(Object component){
+        return graph.containsNode(component);
+    }
+
+    /***
+     * Starts recording every emitted event to the journal, null stops it. Events emitted by handlers while another
+     * event is being dispatched aren't recorded, replaying the outer event sends them again anyway.
+     */
+    public void setJournal(EventJournal journal){
+        this.journal = journal;
+    }
+
+    public EventJournal getJournal(){
+        return journal;
+    }
+
+    private void journal(Object fromComponent, EventAdapter<?> adapter){
+        EventJournal current = journal;
+        if(current != null && dispatchDepth == 1) current.record(fromComponent, graph.getId(graphNodeOf(fromComponent)), adapter);
+    }
+
+    /***
+     * Handler and event type timings, empty unless the JVM was started with -Dtpf.metrics=true.
+     * See PrometheusExporter for getting them out.
+     */
+    public DispatchMetrics getMetrics(){
+        return metrics;
+    }
+
+    //dispatch, plus the start and completion logs if the event is sampled. Nested emits get sampled on their own.
+    private void dispatchRoot(Object component, EventAdapter<?> adapter){
+        dispatchRoot(component, adapter, false);
+    }
+
+    //down skips the climb of UP events, see resumeDeferred.
+    private void dispatchRoot(Object component, EventAdapter<?> adapter, boolean down){
+        component = graphNodeOf(component);
+        boolean outerTrace = traceEmit;
+        long outerStart = traceStartSequence;
+        Object outerLast = traceLastNode;
+        boolean outerOnce = exactlyOnceEmit;
+        VisitedNodes outerVisited = emitVisited;
+        traceEmit = hooks.wants(TPFEventStartLog.class);
+        exactlyOnceEmit = deliveryMode == DeliveryMode.EXACTLY_ONCE;
+        emitVisited = null;
+        if(traceEmit) logStart(component, adapter);
+        try {
+            if(DispatchMetrics.ENABLED || TPFFlightRecorder.dispatchEnabled()) measuredDispatch(component, adapter, down);
+            else if(down) dispatchDown(component, adapter);
+            else dispatch(component, adapter);
+        } finally {
+            if(traceEmit) logCompletion(adapter);
+            if(emitVisited != null) emitVisited.clear();
+            traceEmit = outerTrace;
+            traceStartSequence = outerStart;
+            traceLastNode = outerLast;
+            exactlyOnceEmit = outerOnce;
+            emitVisited = outerVisited;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void logStart(Object component, EventAdapter<?> adapter){
+        TPFEventStartLog log = new TPFEventStartLog();
+        log.firstObjectId = graph.getId(component);
+        log.firstObjectUUID = graph.nodeIds().toUUID(log.firstObjectId);
+        log.eventType = adapter.getEffectiveEventType();
+        hooks.publish(log);
+        traceStartSequence = log.getSequence();
+        traceLastNode = null;
+    }
+
+    private void logPropagation(Object node){
+        logPropagation(traceLastNode, node);
+        traceLastNode = node;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void logPropagation(Object origin, Object node){
+        TPFEventPropagationLog log = new TPFEventPropagationLog();
+        log.originObjectId = origin == null ? TPFNodeIds.NONE : graph.getId(origin);
+        log.currentObjectId = graph.getId(node);
+        log.originObjectUUID = graph.nodeIds().toUUID(log.originObjectId);
+        log.currentObjectUUID = graph.nodeIds().toUUID(log.currentObjectId);
+        log.startSequence = traceStartSequence;
+        hooks.publish(log);
+    }
+
+    private void logCompletion(EventAdapter<?> adapter){
+        TPFEventCompletionLog log = new TPFEventCompletionLog();
+        log.startSequence = traceStartSequence;
+        log.eventType = adapter.getEffectiveEventType();
+        log.propagationStopped = adapter.isPropagationStopped();
+        hooks.publish(log);
+    }
+
+    //The per event type numbers. A handler emitting gets its own count, and the outer one's is put back after.
+    private void measuredDispatch(Object component, EventAdapter<?> adapter, boolean down){
+        boolean outerCount = countEmit;
+        int outerFanOut = emitFanOut, outerDepth = emitDepth, outerBase = emitDepthBase;
+        countEmit = true;
+        emitFanOut = 0;
+        emitDepth = 0;
+        emitDepthBase = 0;
+        Class<?> eventType = adapter.getEffectiveEventType();
+        TPFDispatchEvent flight = TPFFlightRecorder.dispatchEnabled() ? new TPFDispatchEvent() : null;
+        if(flight != null) flight.begin();
+        long start = System.nanoTime();
+        try {
+            if(down) dispatchDown(component, adapter);
+            else dispatch(component, adapter);
+        } finally {
+            if(DispatchMetrics.ENABLED) metrics.eventType(eventType).record(System.nanoTime() - start, emitFanOut, emitDepth);
+            if(flight != null) commitDispatch(flight, component, eventType, 1);
+            countEmit = outerCount;
+            emitFanOut = outerFanOut;
+            emitDepth = outerDepth;
+            emitDepthBase = outerBase;
+        }
+    }
+
+    private void commitDispatch(TPFDispatchEvent flight, Object component, Class<?> eventType, int batchSize){
+        flight.end();
+        if(!flight.shouldCommit()) return;
+        flight.eventType = eventType;
+        flight.rootClass = component == null ? null : WeakComponent.classOf(component);
+        flight.fanOut = emitFanOut;
+        flight.depth = emitDepth;
+        flight.batchSize = batchSize;
+        flight.commit();
+    }
+
+    //Batches only log start and completion for each event, handlers run handler-major so there's no per event path to log.
+    private void dispatchBatchRoot(Object component, Class<?> eventType, List<? extends EventAdapter<?>> adapters){
+        component = graphNodeOf(component);
+        boolean outerTrace = traceEmit;
+        long outerStart = traceStartSequence;
+        Object outerLast = traceLastNode;
+        boolean outerOnce = exactlyOnceEmit;
+        VisitedNodes outerVisited = emitVisited;
+        traceEmit = false;
+        exactlyOnceEmit = deliveryMode == DeliveryMode.EXACTLY_ONCE;
+        emitVisited = null;
+        long[] starts = null;
+        if(hooks.wants(TPFEventStartLog.class)){
+            starts = new long[adapters.size()];
+            for (int i = 0; i < adapters.size(); i++) {
+                logStart(component, adapters.get(i));
+                starts[i] = traceStartSequence;
+            }
+        }
+        try {
+            if(DispatchMetrics.ENABLED || TPFFlightRecorder.dispatchEnabled()) measuredDispatchBatch(component, eventType, adapters);
+            else dispatchBatch(component, eventType, adapters);
+        } finally {
+            if(starts != null){
+                for (int i = 0; i < adapters.size(); i++) {
+                    traceStartSequence = starts[i];
+                    logCompletion(adapters.get(i));
+                }
+            }
+            traceEmit = outerTrace;
+            traceStartSequence = outerStart;
+            traceLastNode = outerLast;
+            exactlyOnceEmit = outerOnce;
+            emitVisited = outerVisited;
+        }
+    }
+
+    //The batch is timed as a whole, each event in it gets an even share of the time and the handler calls.
+    //JFR gets the batch as one event.
+    private void measuredDispatchBatch(Object component, Class<?> eventType, List<? extends EventAdapter<?>> adapters){
+        boolean outerCount = countEmit;
+        int outerFanOut = emitFanOut, outerDepth = emitDepth, outerBase = emitDepthBase;
+        countEmit = true;
+        emitFanOut = 0;
+        emitDepth = 0;
+        emitDepthBase = 0;
+        TPFDispatchEvent flight = TPFFlightRecorder.dispatchEnabled() ? new TPFDispatchEvent() : null;
+        if(flight != null) flight.begin();
+        long start = System.nanoTime();
+        try {
+            dispatchBatch(component, eventType, adapters);
+        } finally {
+            if(DispatchMetrics.ENABLED){
+                long share = (System.nanoTime() - start) / adapters.size();
+                DispatchMetrics.EventTypeMetrics typeMetrics = metrics.eventType(eventType);
+                for (int i = 0; i < adapters.size(); i++) {
+                    typeMetrics.record(share, emitFanOut / adapters.size(), emitDepth);
+                }
+            }
+            if(flight != null) commitDispatch(flight, component, eventType, adapters.size());
+            countEmit = outerCount;
+            emitFanOut = outerFanOut;
+            emitDepth = outerDepth;
+            emitDepthBase = outerBase;
+        }
+    }
+
+    //Called before running entry i of a plan, while countEmit is set. Parallel sections count their own, see runParallel.
+    private void countEntry(DispatchPlan plan, int i){
+        if (plan.handlers[i] != null) {
+            emitFanOut++;
+            emitDepth = Math.max(emitDepth, emitDepthBase + plan.depths[i]);
+        }
+    }
+
+    //Keyed children are dispatched as roots of their own, one level below the route's node.
+    private void runRoute(DispatchPlan plan, int i, EventAdapter<?> adapter){
+        if(!countEmit){
+            plan.routes[i].run(adapter);
+            return;
+        }
+        int outerBase = emitDepthBase;
+        emitDepthBase += plan.depths[i] + 1;
+        try {
+            plan.routes[i].run(adapter);
+        } finally {
+            emitDepthBase = outerBase;
+        }
+    }
+
+    //Same idea as pooledAdapter, one per nesting level.
+    private VisitedNodes visitedNodes(){
+        int slot = dispatchDepth - 1;
+        if(slot >= visitedPool.length){
+            visitedPool = Arrays.copyOf(visitedPool, visitedPool.length * 2);
+        }
+        VisitedNodes visited = visitedPool[slot];
+        if(visited == null){
+            visited = new VisitedNodes();
+            visitedPool[slot] = visited;
+        }
+        return visited;
+    }
+
+    //One adapter per nesting level, a handler emitting gets the next one down so it doesn't clobber the outer event.
+    private NativeEventAdapter pooledAdapter(IEvent event){
+        int slot = dispatchDepth - 1;
+        if(slot >= adapterPool.length){
+            adapterPool = Arrays.copyOf(adapterPool, adapterPool.length * 2);
+        }
+        NativeEventAdapter adapter = adapterPool[slot];
+        if(adapter == null){
+            adapter = new NativeEventAdapter(event);
+            adapterPool[slot] = adapter;
+        } else {
+            adapter.reset(event);
+        }
+        return adapter;
+    }
+
+    //Changes queued from other threads while nothing was dispatching go in before this event starts.
+    private void beginDispatch(){
+        if(dispatchDepth++ == 0){
+            dispatchThread = Thread.currentThread();
+            applyPendingChanges();
+            sweepCollected();
+        }
     }
 
     private void finishedDispatch(){
-        this.dispatchOnGoing = false;
+        if(--dispatchDepth != 0) return;
+        applyPendingChanges();
+        sweepCollected();
+        dispatchThread = null;
+    }
 
-        for(Object[] o : queuedObjects)
+    //Applied in the order they were queued, so a register followed by an unregister of the same thing ends up unregistered.
+    private void applyPendingChanges(){
+        PendingChange change;
+        boolean applied = false;
+        while((change = pendingChanges.poll()) != null)
         {
-            this.register(o[0],o[1],false);
+            switch(change.kind()){
+                case REGISTER -> addToGraph(change.parent(), change.component(), change.key(), change.retention());
+                case UNREGISTER -> removeFromGraph(change.component());
+                case REGISTER_SUBTREE -> addSubtreeToGraph(change.parent(), (Subtree) change.component(), change.retention());
+                case UNREGISTER_SUBTREE -> removeSubtreeFromGraph(change.component());
+            }
+            applied = true;
         }
-
-        this.queuedObjects.clear();
+        if(applied) graphVersion++;
     }
 
 
-    //Only going to deal with downstream events right now.
     private void dispatch(Object component, EventAdapter<?> adapter) {
         if (component == null) {
             System.out.println("Attempted to dispatch an event with a null component: " + adapter.getEvent().getClass());
@@ -85,60 +917,541 @@ public class TPFEventDispatcher {
 
         if(adapter.isPropagationStopped()) return;
 
-        Class<?> componentClass = component.getClass();
         Class<?> eventType = adapter.getEffectiveEventType();
 
-        // Handle the component itself if it has a handler
-        Map<Class<?>, HandlerHolder> componentHandlers = cachedMethods.get(componentClass);
-        if (componentHandlers != null) {
-            HandlerHolder handler = componentHandlers.get(eventType);
+        if(adapter.getDirection() == EventDirection.UP){
+            AncestorChain chain = ancestorChain(component);
+            Class<?> endpoint = adapter.getEndPoint();
+            if(endpoint == null){
+                bubble(chain, eventType, adapter);
+                return;
+            }
+
+            //Climb to the endpoint, then it's a normal downstream event from there. The adapter stays UP, the caller
+            //can emit it again (and the journal has it as emitted), so everything below only ever goes down.
+            Object target = chain.closest(endpoint);
+            if(adapter.isTracing()) recordClimb(chain, target, adapter);
+            if(target == null) return;
+            component = target;
+        }
+
+        dispatchDown(component, adapter);
+    }
+
+    //dispatch without the climb, whatever the adapter's direction. Keyed children and deferred subtrees come in here.
+    private void dispatchDown(Object component, EventAdapter<?> adapter) {
+        if(adapter.isPropagationStopped()) return;
+
+        Class<?> eventType = adapter.getEffectiveEventType();
+
+        //Every node in the graph has had its class resolved, so an empty mask means nobody in the graph subscribes to it.
+        //Roots that aren't in the graph fall through, they can still handle it themselves.
+        BitSet eventMask = eventMask(eventType);
+        if(eventMask.isEmpty() ? graph.containsNode(component) : !graph.isSubtreeInterested(component, eventMask)) return;
+
+        DispatchPlan plan = planFor(component, eventType);
+        //Keyed children of this emit get their own plans, see emitVisited. Nothing has run yet, so nothing is missing from the set.
+        if (exactlyOnceEmit && emitVisited == null && plan.hasRoutes) emitVisited = visitedNodes();
+
+        for (int i = 0; i < plan.size(); i++) {
+            HandlerHolder handler = plan.handlers[i];
             if (handler != null) {
-                try {
-                    if (handler.expectsAdapter) {
-                        handler.method.invoke(component, adapter.getEvent(), adapter);
-                    } else {
-                        handler.method.invoke(component, adapter.getEvent());
+                if (emitVisited != null && !emitVisited.add(plan.nodes[i])) continue;
+                if (handler.deferrable && tickBudget != null && dispatchDepth == tickBudgetDepth && tickBudget.overBudget()) {
+                    //Out of time this tick, the node and everything under it gets another go next tick.
+                    tickBudget.defer(plan.nodes[i], adapter);
+                    i = plan.subtreeEnds[i] - 1;
+                    continue;
+                }
+                if (countEmit) countEntry(plan, i);
+                if (traceEmit) logPropagation(plan.nodes[i]);
+                plan.invoke(i, adapter);
+            } else if (plan.forks[i] != null) {
+                runParallel(plan, i, adapter);
+            } else {
+                runRoute(plan, i, adapter);
+            }
+            if(adapter.isPropagationStopped()) return;
+
+            if(plan.invalidated){
+                //The handler changed the graph under this root (GameStuff registering a Dup under itself).
+                //As long as everything that already ran is still in the same place, pick up the new plan so new children get this event too.
+                DispatchPlan fresh = planFor(component, eventType);
+                if(fresh.sharesPrefix(plan, i + 1)){
+                    if (exactlyOnceEmit && emitVisited == null && fresh.hasRoutes) {
+                        //The new plan has a route the old one didn't, so what already ran has to go in first.
+                        emitVisited = visitedNodes();
+                        for (int done = 0; done <= i; done++) {
+                            if (plan.handlers[done] != null) emitVisited.add(plan.nodes[done]);
+                        }
                     }
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    throw new RuntimeException(e);
+                    plan = fresh;
                 }
             }
         }
+    }
 
-        // Get children and split into priority and non-priority
-        Set<Object> children = graph.getChildren(component);
-        List<Object> priorityChildren = new ArrayList<>();
-        List<Object> otherChildren = new ArrayList<>();
+    //Same as dispatch, except every step of the plan runs each adapter that hasn't stopped yet.
+    private void dispatchBatch(Object component, Class<?> eventType, List<? extends EventAdapter<?>> adapters) {
+        if (component == null) {
+            System.out.println("Attempted to dispatch an event with a null component: " + eventType);
+            return;
+        }
 
-        for (Object child : children) {
-            Map<Class<?>, HandlerHolder> childHandlers = cachedMethods.get(child.getClass());
-            HandlerHolder childHandler = (childHandlers != null) ? childHandlers.get(eventType) : null;
+        BitSet eventMask = eventMask(eventType);
+        if(eventMask.isEmpty() ? graph.containsNode(component) : !graph.isSubtreeInterested(component, eventMask)) return;
+
+        int running = 0;
+        for (EventAdapter<?> adapter : adapters) {
+            if (!adapter.isPropagationStopped()) running++;
+        }
+
+        DispatchPlan plan = planFor(component, eventType);
+
+        if (exactlyOnceEmit && plan.hasRoutes) {
+            //Every event would need its own visited set, so these just go one at a time.
+            for (EventAdapter<?> adapter : adapters) {
+                dispatch(component, adapter);
+                if (emitVisited != null) {
+                    emitVisited.clear();
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < plan.size() && running > 0; i++) {
+            HandlerHolder handler = plan.handlers[i];
+            for (EventAdapter<?> adapter : adapters) {
+                if (adapter.isPropagationStopped()) continue;
+                if (countEmit) countEntry(plan, i);
+                if (handler != null) {
+                    plan.invoke(i, adapter);
+                } else if (plan.forks[i] != null) {
+                    runParallel(plan, i, adapter);
+                } else {
+                    runRoute(plan, i, adapter);
+                }
+                if (adapter.isPropagationStopped()) running--;
+            }
 
-            if (childHandler != null) {
-                priorityChildren.add(child);
+            if(plan.invalidated){
+                DispatchPlan fresh = planFor(component, eventType);
+                if(fresh.sharesPrefix(plan, i + 1)){
+                    plan = fresh;
+                }
+            }
+        }
+    }
+
+    //Component first, then each ancestor. Upstream events don't fan out, so there's no plan, just the chain.
+    private void bubble(AncestorChain chain, Class<?> eventType, EventAdapter<?> adapter){
+        for (int i = 0; i < chain.nodes.length; i++) {
+            Object node = chain.nodes[i];
+            if(adapter.isTracing()) adapter.recordVisitedUpstream(WeakComponent.componentOf(node));
+            HandlerHolder handler = resolveHandler(WeakComponent.classOf(node), eventType);
+            if (handler != null) {
+                if (traceEmit) logPropagation(node);
+                if (countEmit) {
+                    //Depth going up is how many levels it climbed.
+                    emitFanOut++;
+                    emitDepth = Math.max(emitDepth, i);
+                }
+                if (DispatchMetrics.ENABLED || TPFFlightRecorder.handlerEnabled()) {
+                    DispatchPlan.invokeTimed(handler, node, adapter, DispatchMetrics.ENABLED ? metrics.handler(WeakComponent.classOf(node), eventType) : null);
+                } else {
+                    handler.invoke(node, adapter);
+                }
+                if(adapter.isPropagationStopped()) return;
+            }
+        }
+    }
+
+    private void recordClimb(AncestorChain chain, Object target, EventAdapter<?> adapter){
+        for (Object node : chain.nodes) {
+            if(node == target) return;
+            adapter.recordVisitedUpstream(WeakComponent.componentOf(node));
+        }
+    }
+
+    private AncestorChain ancestorChain(Object node){
+        AncestorChain chain = ancestorChains.get(node);
+        if(chain == null){
+            chain = AncestorChain.of(graph, node);
+            //Same as the plans, invalidateAncestorChains only ever walks the graph, so a chain for anything else would stay forever.
+            if(graph.containsNode(node)) ancestorChains.put(node, chain);
+        }
+        return chain;
+    }
+
+    //A node's chain goes through all of its ancestors, so moving a node changes the chain of everything under it too.
+    private void invalidateAncestorChains(Object node){
+        if(ancestorChains.isEmpty()) return;
+
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> toVisit = new ArrayDeque<>();
+        toVisit.push(node);
+        while(!toVisit.isEmpty()){
+            Object current = toVisit.pop();
+            if(!visited.add(current)) continue;
+            ancestorChains.remove(current);
+            toVisit.addAll(graph.getChildren(current));
+        }
+    }
+
+    /***
+     * Runs the keyed children of parent whose key matches the event's routing key, or all of them if the event has no key.
+     * Each one gets dispatched as its own root, so it has its own cached plan.
+     */
+    private void routeKeyed(Object parent, EventAdapter<?> adapter){
+        Object key = adapter.getRoutingKey();
+        List<Object> children = key == null ? graph.getAllKeyedChildren(parent) : graph.getKeyedChildren(parent, key);
+        //Indexed, the live list can grow if a handler registers another child under the same key.
+        for (int i = 0; i < children.size(); i++) {
+            dispatchDown(children.get(i), adapter);
+            if (adapter.isPropagationStopped()) return;
+        }
+    }
+
+    /***
+     * Entry i of plan is a parallel section. Counts whatever its children ran once they're all done, and if this was the
+     * outermost section, dispatches the emits its handlers made in the meantime.
+     */
+    private void runParallel(DispatchPlan plan, int i, EventAdapter<?> adapter){
+        SectionWalk walk = SectionWalk.start(plan.nodes[i], emitDepthBase + plan.depths[i] + 1, countEmit);
+        runSection(plan.forks[i], adapter, walk);
+        if (walk.counting()) {
+            emitFanOut += walk.fanOut();
+            emitDepth = Math.max(emitDepth, walk.depth());
+        }
+    }
+
+    private void runSection(ParallelSection section, EventAdapter<?> adapter, SectionWalk walk){
+        parallelSections.incrementAndGet();
+        boolean finished = false;
+        try {
+            section.run(adapter, walk);
+            finished = true;
+        } finally {
+            //Only the outermost section gets back here on the dispatching thread.
+            if (parallelSections.decrementAndGet() == 0) {
+                if (finished) runSectionEmits();
+                else sectionEmits.clear();
+            }
+        }
+    }
+
+    /***
+     * A handler inside a parallel section emitted. The plan cache, the adapter pool and the counters aren't thread safe,
+     * and the section's children might be on ForkJoin threads, so the emit waits until the section is done and then runs on
+     * the dispatching thread, in the order they were made. If the section throws they're dropped along with the rest of the emit.
+     */
+    private void queueEmit(Runnable emit){
+        sectionEmits.add(emit);
+    }
+
+    private void runSectionEmits(){
+        Runnable emit;
+        while ((emit = sectionEmits.poll()) != null) {
+            emit.run();
+        }
+    }
+
+    /***
+     * One child plan of a parallel section, run like dispatch runs a plan (counting, propagation logs, tick budget deferral),
+     * but possibly on a ForkJoin thread. The counts go into the walk instead of emitFanOut/emitDepth, and everything it reads
+     * off the dispatcher was set before the section started and can't change until it's done.
+     * Subplans never swap themselves out, registering is deferred while a section runs so they can't go stale.
+     */
+    private void runSectionPlan(DispatchPlan plan, EventAdapter<?> adapter, SectionWalk walk){
+        Object last = walk.parent;
+        for (int i = 0; i < plan.size(); i++) {
+            HandlerHolder handler = plan.handlers[i];
+            if (handler != null) {
+                if (emitVisited != null && !emitVisited.add(plan.nodes[i])) continue;
+                if (handler.deferrable && tickBudget != null && dispatchDepth == tickBudgetDepth && tickBudget.overBudget()) {
+                    tickBudget.defer(plan.nodes[i], adapter);
+                    i = plan.subtreeEnds[i] - 1;
+                    continue;
+                }
+                if (walk.counting()) walk.count(plan.depths[i]);
+                if (traceEmit) logPropagation(last, plan.nodes[i]);
+                last = plan.nodes[i];
+                plan.invoke(i, adapter);
+            } else if (plan.forks[i] != null) {
+                runSection(plan.forks[i], adapter, walk.below(plan.nodes[i], plan.depths[i] + 1));
             } else {
-                otherChildren.add(child);
+                routeKeyedInSection(plan.routes[i].parent, adapter, walk.below(plan.nodes[i], plan.depths[i] + 1));
             }
+            if (adapter.isPropagationStopped()) return;
+        }
+    }
+
+    //routeKeyed for inside a parallel section. The graph can't change right now, but the plan cache isn't thread safe.
+    private void routeKeyedInSection(Object parent, EventAdapter<?> adapter, SectionWalk walk){
+        Object key = adapter.getRoutingKey();
+        List<Object> children = key == null ? graph.getAllKeyedChildren(parent) : graph.getKeyedChildren(parent, key);
+        for (Object child : children) {
+            DispatchPlan plan;
+            synchronized (dispatchPlans) {
+                plan = planFor(child, adapter.getEffectiveEventType());
+            }
+            runSectionPlan(plan, adapter, walk);
+            if (adapter.isPropagationStopped()) return;
+        }
+    }
+
+    private DispatchPlan planFor(Object root, Class<?> eventType){
+        //A root that isn't in the graph (a throwaway sender) would never have its entry taken out again, so its plan is only used once.
+        //It's just the root's own handler anyway, it has no children.
+        if(!graph.containsNode(root)){
+            compileEpoch = deliveryMode == DeliveryMode.EXACTLY_ONCE ? graph.newEpoch() : 0;
+            return compilePlan(root, eventType, eventMask(eventType));
         }
 
-        // Sort priority children by descending priority
-        priorityChildren.sort(Comparator.comparingInt(
-                o -> -cachedMethods.get(o.getClass()).get(eventType).priority
-        ));
+        Map<Class<?>, DispatchPlan> rootPlans = dispatchPlans.get(root);
+        if(rootPlans == null){
+            rootPlans = new HashMap<>();
+            dispatchPlans.put(root, rootPlans);
+        }
 
-        // Dispatch recursively
+        DispatchPlan plan = rootPlans.get(eventType);
+        if(plan == null){
+            //The whole plan, parallel sections included, is one walk as far as exactly once is concerned.
+            compileEpoch = deliveryMode == DeliveryMode.EXACTLY_ONCE ? graph.newEpoch() : 0;
+            plan = compilePlan(root, eventType, eventMask(eventType));
+            rootPlans.put(eventType, plan);
+        }
+        return plan;
+    }
+
+    private DispatchPlan compilePlan(Object root, Class<?> eventType, BitSet eventMask){
+        DispatchPlan.Builder plan = new DispatchPlan.Builder();
+        compilePlan(root, eventType, eventMask, plan);
+        return plan.build();
+    }
+
+    //Same walk dispatch used to do on every emit, except it only records who gets called.
+    //Children get pushed in reverse so they come back off the stack in the same order the recursive version visited them.
+    //Keyed children are left out, a KeyedRoute gets pushed under the node's other children so it comes out after all of them.
+    private void compilePlan(Object root, Class<?> eventType, BitSet eventMask, DispatchPlan.Builder plan) {
+        int base = compileStack.size();
+        compileStack.push(root, 0);
+
+        List<Object> priorityChildren = new ArrayList<>();
+        List<Object> otherChildren = new ArrayList<>();
+
+        while (compileStack.size() > base) {
+            int depth = compileStack.peekTag();
+            Object component = compileStack.pop();
+            if (component instanceof KeyedRoute route) {
+                plan.route(route.parent, route, depth);
+                continue;
+            }
+            if (component instanceof SubtreeEnd end) {
+                plan.endSubtree(end.entry());
+                continue;
+            }
+            //Already in the plan through another parent.
+            if (compileEpoch != 0 && !graph.markVisited(component, compileEpoch)) continue;
+
+            HandlerHolder handler = resolveHandler(WeakComponent.classOf(component), eventType);
+            int deferrableEntry = -1;
+            if (handler != null) {
+                int entry = plan.handler(component, handler, depth,
+                        DispatchMetrics.ENABLED ? metrics.handler(WeakComponent.classOf(component), eventType) : null);
+                if (handler.deferrable) deferrableEntry = entry;
+            }
+
+            //The DAG keeps the children sorted (priority children by descending priority, then the rest), so this only splits them.
+            priorityChildren.clear();
+            otherChildren.clear();
+            boolean keyedParent = graph.hasKeyedChildren(component);
+            boolean hasKeyedRoute = false;
+            Object[] children = graph.getOrderedChildren(component, eventType);
+            int childCount = graph.getOrderedChildCount(component, eventType);
+            for (int c = 0; c < childCount; c++) {
+                Object child = children[c];
+                if (keyedParent && graph.getRoutingKey(component, child) != null) {
+                    hasKeyedRoute |= graph.isSubtreeInterested(child, eventMask);
+                    continue;
+                }
+
+                if (resolveHandler(WeakComponent.classOf(child), eventType) != null) {
+                    priorityChildren.add(child);
+                } else if (graph.isSubtreeInterested(child, eventMask)) {
+                    otherChildren.add(child);
+                }
+                //else: nobody in that branch handles the type, skip the whole thing
+            }
+
+            if (PARALLEL_CHILDREN.get(WeakComponent.classOf(component))) {
+                //The section compiles its own children, so it needs copies of the lists this loop reuses.
+                ParallelSection section = compileParallelSection(new ArrayList<>(priorityChildren), new ArrayList<>(otherChildren), eventType, eventMask);
+                if (section != null) {
+                    plan.fork(component, section, depth);
+                }
+                if (hasKeyedRoute) plan.route(component, new KeyedRoute(component, this::routeKeyed), depth);
+                if (deferrableEntry >= 0) plan.endSubtree(deferrableEntry);
+                continue;
+            }
+
+            //Comes off the stack once the whole subtree is in.
+            if (deferrableEntry >= 0) {
+                compileStack.push(new SubtreeEnd(deferrableEntry));
+            }
+            if (hasKeyedRoute) {
+                compileStack.push(new KeyedRoute(component, this::routeKeyed), depth);
+            }
+            for (int i = otherChildren.size() - 1; i >= 0; i--) {
+                compileStack.push(otherChildren.get(i), depth + 1);
+            }
+            for (int i = priorityChildren.size() - 1; i >= 0; i--) {
+                compileStack.push(priorityChildren.get(i), depth + 1);
+            }
+        }
+    }
+
+    //One band per priority among the children with a handler, and one last band for the children without one.
+    private ParallelSection compileParallelSection(List<Object> priorityChildren, List<Object> otherChildren, Class<?> eventType, BitSet eventMask){
+        List<List<Object>> bandChildren = new ArrayList<>();
+        int lastPriority = 0;
         for (Object child : priorityChildren) {
-            dispatch(child, adapter);
-            if(adapter.isPropagationStopped()) return;
+            int priority = resolveHandler(WeakComponent.classOf(child), eventType).priority;
+            if (bandChildren.isEmpty() || priority != lastPriority) {
+                bandChildren.add(new ArrayList<>());
+                lastPriority = priority;
+            }
+            bandChildren.get(bandChildren.size() - 1).add(child);
+        }
+        if (!otherChildren.isEmpty()) {
+            bandChildren.add(otherChildren);
         }
 
-        for (Object child : otherChildren) {
-            dispatch(child, adapter);
-            if(adapter.isPropagationStopped()) return;
+        List<DispatchPlan[]> bands = new ArrayList<>();
+        List<Boolean> independent = new ArrayList<>();
+        for (List<Object> children : bandChildren) {
+            List<DispatchPlan> plans = new ArrayList<>();
+            for (Object child : children) {
+                DispatchPlan childPlan = compilePlan(child, eventType, eventMask);
+                if (childPlan.size() > 0) plans.add(childPlan);
+            }
+            if (plans.isEmpty()) continue;
+            bands.add(plans.toArray(new DispatchPlan[0]));
+            independent.add(subtreesDisjoint(children));
+        }
+
+        if (bands.isEmpty()) return null;
+
+        boolean[] independentBands = new boolean[independent.size()];
+        for (int i = 0; i < independentBands.length; i++) {
+            independentBands[i] = independent.get(i);
+        }
+        return new ParallelSection(bands.toArray(new DispatchPlan[0][]), independentBands, this::runSectionPlan);
+    }
+
+    //Children that share a descendant can't run at the same time, that descendant would get the event on two threads at once.
+    private boolean subtreesDisjoint(List<Object> children){
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Object child : children) {
+            Set<Object> subtree = Collections.newSetFromMap(new IdentityHashMap<>());
+            Deque<Object> toVisit = new ArrayDeque<>();
+            toVisit.push(child);
+            while (!toVisit.isEmpty()) {
+                Object current = toVisit.pop();
+                if (!subtree.add(current)) continue;
+                if (seen.contains(current)) return false;
+                toVisit.addAll(graph.getChildren(current));
+            }
+            seen.addAll(subtree);
+        }
+        return true;
+    }
+
+    /***
+     * Drops every plan that could include the node, which is the plans of the node itself and of everything above it.
+     * Only called when the graph changes, so the allocations here don't matter.
+     */
+    private void invalidatePlans(Object node){
+        if(node == null || dispatchPlans.isEmpty()) return;
+
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> toVisit = new ArrayDeque<>();
+        toVisit.push(node);
+
+        while(!toVisit.isEmpty()){
+            Object current = toVisit.pop();
+            if(!visited.add(current)) continue;
+
+            Map<Class<?>, DispatchPlan> rootPlans = dispatchPlans.remove(current);
+            if(rootPlans != null){
+                for(DispatchPlan plan : rootPlans.values()){
+                    plan.invalidated = true;
+                }
+            }
+
+            for(Object parent : graph.getParents(current)){
+                toVisit.push(parent);
+            }
         }
     }
 
+    //Processed classes come from event.json, anything else (objects registered at runtime) is scanned once per class.
+    private Map<Class<?>, HandlerHolder> handlersOf(Class<?> componentClass){
+        Map<Class<?>, HandlerHolder> handlers = cachedMethods.get(componentClass);
+        return (handlers != null) ? handlers : RuntimeInvokers.handlersFor(componentClass);
+    }
+
+    //Exact match first, then the closest useSuperClasses handler. Both are cached, so this is only ever a couple of lookups.
+    private HandlerHolder resolveHandler(Class<?> componentClass, Class<?> eventType){
+        HandlerHolder exact = handlersOf(componentClass).get(eventType);
+        return (exact != null) ? exact : polymorphicHandlers.get(componentClass).resolve(eventType);
+    }
+
+    private int eventTypeId(Class<?> eventType){
+        Integer id = eventTypeIds.get(eventType);
+        if(id == null){
+            id = eventTypeIds.size();
+            eventTypeIds.put(eventType, id);
+            //A supertype that didn't have an id before might be in some of these now.
+            eventMasks.clear();
+        }
+        return id;
+    }
 
+    private BitSet eventMask(Class<?> eventClass){
+        BitSet mask = eventMasks.get(eventClass);
+        if(mask == null){
+            mask = new BitSet();
+            Deque<Class<?>> toVisit = new ArrayDeque<>();
+            Set<Class<?>> visited = new HashSet<>();
+            toVisit.push(eventClass);
+            while(!toVisit.isEmpty()){
+                Class<?> current = toVisit.pop();
+                if(!visited.add(current)) continue;
+
+                Integer id = eventTypeIds.get(current);
+                if(id != null) mask.set(id);
+
+                if(current.getSuperclass() != null) toVisit.push(current.getSuperclass());
+                toVisit.addAll(Arrays.asList(current.getInterfaces()));
+            }
+            eventMasks.put(eventClass, mask);
+        }
+        return mask;
+    }
+
+    //Event type ids this class handles itself. Handlers never change after a class is resolved, so this is cached per class.
+    private BitSet interestsOf(Class<?> componentClass){
+        BitSet interests = classInterests.get(componentClass);
+        if(interests == null){
+            interests = new BitSet();
+            for(Class<?> eventType : handlersOf(componentClass).keySet()){
+                interests.set(eventTypeId(eventType));
+            }
+            classInterests.put(componentClass, interests);
+        }
+        return interests;
+    }
 
     public void setUpDAG(){
 
@@ -160,7 +1473,9 @@ public class TPFEventDispatcher {
 
             Object correspondingNode = nodeRepository.getNode(nodeType);
             if(inf.dependencies.isEmpty()){
+                boolean added = !graph.containsNode(correspondingNode);
                 graph.addNode(correspondingNode);
+                logAddition(null, correspondingNode, added);
             }
             else
             {
@@ -174,14 +1489,29 @@ public class TPFEventDispatcher {
 
                     Object dependency = nodeRepository.getNode(dependencyType);
 
+                    boolean nodeAdded = !graph.containsNode(correspondingNode);
+                    boolean added = !graph.containsNode(dependency);
                     graph.addEdge(correspondingNode, dependency);
+                    logAddition(null, correspondingNode, nodeAdded);
+                    logAddition(correspondingNode, dependency, added);
                 }
             }
         }
 
+        invalidateAllPlans();
         graph.printGraph();
     }
 
+    private void invalidateAllPlans(){
+        for(Map<Class<?>, DispatchPlan> rootPlans : dispatchPlans.values()){
+            for(DispatchPlan plan : rootPlans.values()){
+                plan.invalidated = true;
+            }
+        }
+        dispatchPlans.clear();
+        ancestorChains.clear();
+    }
+
     private void calculateCachedMethods(){
         if(eventFile == null) return;
 
@@ -196,6 +1526,7 @@ public class TPFEventDispatcher {
             }
 
             HashMap<Class<?>, HandlerHolder> cache = cachedMethods.computeIfAbsent(currentClass, k -> new HashMap<>());
+            EventInvoker generatedInvoker = loadGeneratedInvoker(eventFile.invokers.get(qualifiedClassName));
 
             HashMap<String,MethodSignature> methodsToCache = preCache.get(qualifiedClassName);
             for(String qualifiedEventClassName : methodsToCache.keySet()){
@@ -208,46 +1539,78 @@ public class TPFEventDispatcher {
                     throw new RuntimeException(e);
                 }
 
-                Class<?>[] parameterTypes = new Class[sig.parameterTypes.size()];
+                if(generatedInvoker != null && sig.handlerId >= 0){
+                    cache.put(eventType, new HandlerHolder(generatedInvoker, sig.handlerId, sig.priority, sig.expectsAdapter, sig.useSuperClasses, sig.deferrable));
+                    continue;
+                }
 
-                for(int i = 0; i<sig.parameterTypes.size();i++){
-                    String parameterType = sig.parameterTypes.get(i);
-                    Class<?> paramClass = null;
-                    try {
-                        paramClass = Class.forName(parameterType);
-                    } catch (ClassNotFoundException e) {
-                        throw new RuntimeException(e);
-                    }
+                //No generated invoker for this method (private method/class), so it gets spun at runtime instead.
+                Method method = findHandlerMethod(currentClass, sig);
+                cache.put(eventType, new HandlerHolder(RuntimeInvokers.createInvoker(currentClass, method, sig.expectsAdapter), 0, sig.priority, sig.expectsAdapter, sig.useSuperClasses, sig.deferrable));
+            }
+        }
 
-                    parameterTypes[i] = paramClass;
-                }
+        preResolveEventHierarchy();
+    }
 
-                String methodName = sig.methodName;
+    //The subclasses the processor saw get resolved now, so the first emit of one of them doesn't have to walk the hierarchy.
+    private void preResolveEventHierarchy(){
+        if(eventFile.eventHierarchy == null || eventFile.eventHierarchy.isEmpty()) return;
 
-                Method method = null;
+        List<Class<?>> knownSubclasses = new ArrayList<>();
+        for(List<String> subclassNames : eventFile.eventHierarchy.values()){
+            for(String subclassName : subclassNames){
                 try {
-                    method = currentClass.getDeclaredMethod(methodName, parameterTypes);
-                } catch (NoSuchMethodException e) {
+                    knownSubclasses.add(Class.forName(subclassName));
+                } catch (ClassNotFoundException e) {
                     throw new RuntimeException(e);
                 }
-                method.setAccessible(true);
-                HandlerHolder hold = new HandlerHolder(method, sig.priority, sig.expectsAdapter);
-                cache.put(eventType, hold);
             }
         }
+
+        for(Class<?> subscriberClass : cachedMethods.keySet()){
+            PolymorphicHandlers handlers = polymorphicHandlers.get(subscriberClass);
+            if(handlers.isEmpty()) continue;
+            for(Class<?> subclass : knownSubclasses){
+                handlers.resolve(subclass);
+            }
+        }
+    }
+
+    private EventInvoker loadGeneratedInvoker(String invokerClassName){
+        if(invokerClassName == null) return null;
+        try {
+            return (EventInvoker) Class.forName(invokerClassName).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            System.out.println("Unable to load the generated invoker " + invokerClassName + ", falling back to reflection: " + e);
+            return null;
+        }
     }
 
+    private Method findHandlerMethod(Class<?> currentClass, MethodSignature sig){
+        Class<?>[] parameterTypes = new Class[sig.parameterTypes.size()];
+
+        for(int i = 0; i<sig.parameterTypes.size();i++){
+            String parameterType = sig.parameterTypes.get(i);
+            Class<?> paramClass = null;
+            try {
+                paramClass = Class.forName(parameterType);
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+
+            parameterTypes[i] = paramClass;
+        }
 
-    // Internal holder for a handler method and its priority
-    private class HandlerHolder {
-        final Method method;
-        final int priority;
-        final boolean expectsAdapter;
+        String methodName = sig.methodName;
 
-        HandlerHolder(Method method, int priority, boolean expectsAdapter) {
-            this.method = method;
-            this.priority = priority;
-            this.expectsAdapter = expectsAdapter;
+        Method method = null;
+        try {
+            method = currentClass.getDeclaredMethod(methodName, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
         }
+        method.setAccessible(true);
+        return method;
     }
 }
@@ -0,0 +1,49 @@
+package org.treepluginframework.component_architecture;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Hands out the ids of every node a TPF puts in its DAG. An id is 16 bits taken from the TPF's UUID on top of a 48 bit counter,
+ * so ids from two TPFs don't collide in a shared log, and handing one out is a single increment instead of a UUID.randomUUID()
+ * going through SecureRandom.
+ * toUUID gives the old UUID form for anything that still wants one, it's only built when asked for.
+ */
+public final class TPFNodeIds {
+    //Never handed out, the counter starts at 1.
+    public static final long NONE = 0L;
+
+    private static final int COUNTER_BITS = 48;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+
+    private final UUID tpfUUID;
+    private final long prefix;
+    private final AtomicLong counter = new AtomicLong();
+
+    public TPFNodeIds(UUID tpfUUID) {
+        this.tpfUUID = tpfUUID;
+        this.prefix = (tpfUUID.getMostSignificantBits() >>> COUNTER_BITS) << COUNTER_BITS;
+    }
+
+    public long next() {
+        long count = counter.incrementAndGet();
+        if (count > COUNTER_MASK) throw new IllegalStateException("Ran out of node ids");
+        return prefix | count;
+    }
+
+    //The same id as a UUID: the TPF's own high bits, and the id as the low ones. Null for NONE.
+    public UUID toUUID(long id) {
+        if (id == NONE) return null;
+        return new UUID(tpfUUID.getMostSignificantBits(), id);
+    }
+
+    //An id another TPF handed out, with this TPF's high bits instead. It's the same node if both registered their nodes in the same order.
+    public long rebase(long id) {
+        if (id == NONE) return NONE;
+        return prefix | (id & COUNTER_MASK);
+    }
+
+    public UUID getTpfUUID() {
+        return tpfUUID;
+    }
+}
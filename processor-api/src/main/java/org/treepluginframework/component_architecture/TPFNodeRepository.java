@@ -1,5 +1,8 @@
 package org.treepluginframework.component_architecture;
 
+import org.treepluginframework.hooks.startup.TPFNodeCreatedLog;
+import org.treepluginframework.jfr.TPFFlightRecorder;
+import org.treepluginframework.jfr.TPFNodeConstructionEvent;
 import org.treepluginframework.values.ClassValueMetadata;
 import org.treepluginframework.values.ConstructorInformation;
 import org.treepluginframework.values.ParameterValueInfo;
@@ -121,8 +124,23 @@ public class TPFNodeRepository {
                 System.out.println("Wanted class: " + wantedClass.getCanonicalName());
                 System.out.println(Arrays.toString(params));
                 System.out.println("Check Args: " + constructorSig);
+                //Only the constructor itself, field injection shows up as its own event.
+                TPFNodeConstructionEvent flight = TPFFlightRecorder.nodeConstructionEnabled() ? new TPFNodeConstructionEvent() : null;
+                if(flight != null) flight.begin();
                 Object newObj = matchingConstructor.newInstance(params);
+                if(flight != null){
+                    flight.end();
+                    if(flight.shouldCommit()){
+                        flight.nodeClass = wantedClass;
+                        flight.commit();
+                    }
+                }
                 nodes.put(wantedClass, newObj);
+                if(mainTPF != null && mainTPF.getHooks().wants(TPFNodeCreatedLog.class)){
+                    TPFNodeCreatedLog log = new TPFNodeCreatedLog();
+                    log.nodeClass = wantedClass;
+                    mainTPF.tpfLogEvent(log);
+                }
                 valueRepository.injectFields(newObj);
             } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
                 throw new RuntimeException(e);
@@ -1,6 +1,11 @@
 package org.treepluginframework.component_architecture;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.treepluginframework.hooks.TPFHookBus;
+import org.treepluginframework.hooks.values.TPFConfigurationFileAddedLog;
+import org.treepluginframework.hooks.values.TPFValueRetrievedLog;
+import org.treepluginframework.jfr.TPFFieldInjectionEvent;
+import org.treepluginframework.jfr.TPFFlightRecorder;
 import org.treepluginframework.values.ClassValueMetadata;
 import org.treepluginframework.values.FieldValueInfo;
 import org.treepluginframework.values.TPFMetadataFile;
@@ -28,6 +33,8 @@ public class TPFValueRepository {
     private HashMap<String,HashMap<String,String>> savedConfigurationFileValues = new HashMap<>();
     private TPFMetadataFile metaFile;
     private File globalConfigFile;
+    //Set by TPF, values that get injected are logged to it.
+    private TPFHookBus hooks = new TPFHookBus();
     /***
      * I need to add the docker secrets part too.
      */
@@ -35,12 +42,36 @@ public class TPFValueRepository {
         metaFile = metadataFile;
     }
 
+    public void setHooks(TPFHookBus hooks){
+        this.hooks = hooks;
+    }
+
     public void addGlobalConfigurationFile(File configurationFile){
         this.globalConfigFile = configurationFile;
+        logConfigurationFile(configurationFile, true);
     }
 
     public void addConfigurationFile(File configurationFile){
         configurationFiles.put(configurationFile.getName(),configurationFile);
+        logConfigurationFile(configurationFile, false);
+    }
+
+    private void logConfigurationFile(File configurationFile, boolean isGlobal){
+        if(!hooks.wants(TPFConfigurationFileAddedLog.class)) return;
+        TPFConfigurationFileAddedLog log = new TPFConfigurationFileAddedLog();
+        log.isGlobal = isGlobal;
+        log.configurationFileName = configurationFile.getName();
+        hooks.publish(log);
+    }
+
+    private void logValueRetrieved(String configurationFile, String location, Object value){
+        if(!hooks.wants(TPFValueRetrievedLog.class)) return;
+        TPFValueRetrievedLog log = new TPFValueRetrievedLog();
+        log.globalFile = globalConfigFile == null ? null : globalConfigFile.getName();
+        log.configurationFile = configurationFile;
+        log.location = location;
+        log.value = String.valueOf(value);
+        hooks.publish(log);
     }
 
     public void loadAllValues(){
@@ -354,16 +385,35 @@ public class TPFValueRepository {
 
     public void injectFields(Object object){
         if(object == null) return;
+        if(!TPFFlightRecorder.fieldInjectionEnabled()){
+            inject(object);
+            return;
+        }
+
+        TPFFieldInjectionEvent flight = new TPFFieldInjectionEvent();
+        flight.begin();
+        int fieldsSet = inject(object);
+        flight.end();
+        if(flight.shouldCommit()){
+            flight.objectClass = object.getClass();
+            flight.fieldsSet = fieldsSet;
+            flight.commit();
+        }
+    }
+
+    //Returns how many fields it set.
+    private int inject(Object object){
+        int fieldsSet = 0;
 
         String className = object.getClass().getCanonicalName();
         if(!cachedFields.containsKey(object.getClass())){
             System.out.println("Cached Fields does not have the class " + object.getClass());
-            return;
+            return 0;
         }
 
         if(!metaFile.classes.containsKey(className)){
             System.out.println("MetaFile Classes does not contain the class " + className);
-            return;
+            return 0;
         }
 
         System.out.println("Class made it through: " + className);
@@ -402,9 +452,14 @@ public class TPFValueRepository {
             if(neededValue == null){
                 neededValue = convertStringToType(annotationsInfo.defaultValue, f.getType());
             }
+            else
+            {
+                logValueRetrieved(null, annotationsInfo.location, neededValue);
+            }
 
             try {
                 f.set(object,neededValue);
+                fieldsSet++;
             } catch (IllegalAccessException e) {
                 throw new RuntimeException(e);
             }
@@ -425,6 +480,8 @@ public class TPFValueRepository {
                         try {
                             System.out.println("File Location: " + location +" Value: " + values.get(location));
                             store.field.set(object, values.get(location));
+                            fieldsSet++;
+                            logValueRetrieved(fileName, location, values.get(location));
                         } catch (IllegalAccessException e) {
                             throw new RuntimeException(e);
                         }
@@ -434,6 +491,7 @@ public class TPFValueRepository {
                         Object neededValue = convertStringToType(store.defaultValue, store.field.getType());
                         try {
                             store.field.set(object,neededValue);
+                            fieldsSet++;
                         } catch (IllegalAccessException e) {
                             throw new RuntimeException(e);
                         }
@@ -443,7 +501,7 @@ public class TPFValueRepository {
 
         }
 
-
+        return fieldsSet;
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,34 @@
+package org.treepluginframework.component_architecture;
+
+import org.treepluginframework.events.EventAdapter;
+
+import java.util.ArrayDeque;
+
+/***
+ * The time a TickScheduler tick has left, and the deferrable subtrees that didn't make it.
+ * Touched from the scheduler's thread, and from ForkJoin threads when a parallel section defers, so the queue is locked.
+ */
+final class TickBudget {
+    record Deferred(Object node, EventAdapter<?> adapter) {
+    }
+
+    long deadlineNanos = Long.MAX_VALUE;
+    private final ArrayDeque<Deferred> deferred = new ArrayDeque<>();
+
+    boolean overBudget() {
+        return System.nanoTime() > deadlineNanos;
+    }
+
+    synchronized void defer(Object node, EventAdapter<?> adapter) {
+        deferred.addLast(new Deferred(node, adapter));
+    }
+
+    //Oldest first, so nothing waits forever behind newer work.
+    synchronized Deferred nextDeferred() {
+        return deferred.pollFirst();
+    }
+
+    synchronized int deferredCount() {
+        return deferred.size();
+    }
+}
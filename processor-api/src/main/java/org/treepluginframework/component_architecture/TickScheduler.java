@@ -0,0 +1,158 @@
+package org.treepluginframework.component_architecture;
+
+import org.treepluginframework.events.EventAdapter;
+import org.treepluginframework.events.IEvent;
+import org.treepluginframework.events.NativeEventAdapter;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/***
+ * Emits a tick event from a root at a fixed rate, and keeps every tick inside a time budget.
+ * Handlers marked EventSubscription(deferrable = true) are skipped once a tick is over budget, together with everything under
+ * their node, and get run at the start of whatever time is left in later ticks, oldest first. Non deferrable handlers always run.
+ * A deferred subtree was skipped for time, not stopped, so it still runs if a handler after it stopped the event in the meantime.
+ * A tick that still goes over the budget gets reported to the overrun listener.
+ *
+ * Everything happens on the scheduler's one thread, which makes it a good fit for TPFEventDispatcher.setConcurrentMode.
+ * Deferring happens in the main walk and inside parallel sections, not in batches.
+ */
+public class TickScheduler implements AutoCloseable {
+    /***
+     * @param tick which tick this was, starting at 1
+     * @param durationNanos how long the whole tick took, deferred work included
+     * @param budgetNanos the budget it had
+     * @param deferredBacklog subtrees still waiting for a later tick
+     */
+    public record TickReport(long tick, long durationNanos, long budgetNanos, int deferredBacklog) {
+        public boolean overran() {
+            return durationNanos > budgetNanos;
+        }
+    }
+
+    private final TPFEventDispatcher dispatcher;
+    private final Object root;
+    private final Supplier<? extends EventAdapter<?>> ticks;
+    private final long periodNanos;
+    private final long budgetNanos;
+    private final TickBudget budget = new TickBudget();
+
+    private ScheduledExecutorService executor;
+    private volatile Consumer<TickReport> overrunListener = report ->
+            System.out.println("Tick " + report.tick() + " took " + TimeUnit.NANOSECONDS.toMillis(report.durationNanos())
+                    + "ms, budget is " + TimeUnit.NANOSECONDS.toMillis(report.budgetNanos()) + "ms (" + report.deferredBacklog() + " deferred)");
+
+    private volatile long tickCount = 0;
+    private volatile long overrunCount = 0;
+    private volatile long lastTickNanos = 0;
+    private volatile long maxTickNanos = 0;
+
+    /***
+     * @param ticks makes the adapter for each tick. Needs to be a new one every time, deferred subtrees hold on to it.
+     */
+    public TickScheduler(TPFEventDispatcher dispatcher, Object root, Supplier<? extends EventAdapter<?>> ticks, int ticksPerSecond, long budgetMillis) {
+        if (ticksPerSecond <= 0) throw new IllegalArgumentException("Ticks per second must be positive");
+        if (budgetMillis <= 0) throw new IllegalArgumentException("Budget must be positive");
+        this.dispatcher = dispatcher;
+        this.root = root;
+        this.ticks = ticks;
+        this.periodNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    //For IEvent ticks, each one gets its own NativeEventAdapter.
+    public static TickScheduler ofEvents(TPFEventDispatcher dispatcher, Object root, Supplier<? extends IEvent> ticks, int ticksPerSecond, long budgetMillis) {
+        return new TickScheduler(dispatcher, root, () -> new NativeEventAdapter(ticks.get()), ticksPerSecond, budgetMillis);
+    }
+
+    public synchronized void start() {
+        if (executor != null) throw new IllegalStateException("Already started");
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> Thread.ofPlatform().daemon(true).name("TPF-tick").unstarted(runnable));
+        //A tick that runs past the period just makes the next one start late, they never overlap.
+        executor.scheduleAtFixedRate(this::runTick, 0, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor == null) return;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /***
+     * Runs one tick right now, on the calling thread. Don't mix with start().
+     */
+    public TickReport tick() {
+        long start = System.nanoTime();
+        budget.deadlineNanos = start + budgetNanos;
+
+        dispatcher.emit(root, ticks.get(), budget);
+
+        //Whatever time is left goes to subtrees earlier ticks had to skip.
+        while (budget.deferredCount() > 0 && !budget.overBudget()) {
+            TickBudget.Deferred deferred = budget.nextDeferred();
+            if (!dispatcher.isRegistered(deferred.node())) continue;
+            //It got deferred while the event was still going, so whatever stopped the event since came after this subtree
+            //in the walk (or was another deferred subtree), and shouldn't keep this one from running.
+            deferred.adapter().resumePropagation();
+            dispatcher.resumeDeferred(deferred.node(), deferred.adapter(), budget);
+        }
+
+        long duration = System.nanoTime() - start;
+        TickReport report = new TickReport(++tickCount, duration, budgetNanos, budget.deferredCount());
+        lastTickNanos = duration;
+        if (duration > maxTickNanos) maxTickNanos = duration;
+        if (report.overran()) {
+            overrunCount++;
+            Consumer<TickReport> listener = overrunListener;
+            if (listener != null) listener.accept(report);
+        }
+        return report;
+    }
+
+    //A tick that throws shouldn't stop every tick after it.
+    private void runTick() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //Null to stop reporting. Defaults to printing the overrun.
+    public void setOverrunListener(Consumer<TickReport> overrunListener) {
+        this.overrunListener = overrunListener;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    public long getMaxTickNanos() {
+        return maxTickNanos;
+    }
+
+    public int getDeferredBacklog() {
+        return budget.deferredCount();
+    }
+}
@@ -0,0 +1,22 @@
+package org.treepluginframework.component_architecture;
+
+import java.util.IdentityHashMap;
+
+/***
+ * Nodes an EXACTLY_ONCE emit has already delivered to, for emits that run more than one plan (keyed children are
+ * dispatched as roots of their own, so compile time deduplication can't see across them).
+ * IdentityHashMap keeps its entries in one array, so a cleared one gets reused without allocating.
+ * Locked since parallel sections add to it from ForkJoin threads.
+ */
+final class VisitedNodes {
+    private final IdentityHashMap<Object, Boolean> nodes = new IdentityHashMap<>();
+
+    //False if the node was already in there.
+    synchronized boolean add(Object node) {
+        return nodes.put(node, Boolean.TRUE) == null;
+    }
+
+    synchronized void clear() {
+        nodes.clear();
+    }
+}
@@ -0,0 +1,30 @@
+package org.treepluginframework.component_architecture;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/***
+ * What the graph holds instead of a component registered with Retention.WEAK. The DAG, dispatch plans and ancestor chains
+ * only ever see this, so nothing in the dispatcher keeps the component itself alive.
+ * The class is kept so handlers and interests can be looked up without the component, after it's gone too.
+ */
+final class WeakComponent extends WeakReference<Object> {
+    final Class<?> componentClass;
+    final int hash;
+
+    WeakComponent(Object component, ReferenceQueue<Object> queue) {
+        super(component, queue);
+        this.componentClass = component.getClass();
+        this.hash = System.identityHashCode(component);
+    }
+
+    //The class handlers get resolved with, for a graph node that might be a WeakComponent.
+    static Class<?> classOf(Object node) {
+        return node instanceof WeakComponent weak ? weak.componentClass : node.getClass();
+    }
+
+    //The component behind a graph node, null if it was weak and has been collected.
+    static Object componentOf(Object node) {
+        return node instanceof WeakComponent weak ? weak.get() : node;
+    }
+}
@@ -0,0 +1,91 @@
+package org.treepluginframework.component_architecture;
+
+import java.lang.ref.ReferenceQueue;
+
+/***
+ * Component -> its WeakComponent, by reference, without holding the component. Open addressing over the handles, which keep
+ * the component's identity hash so they can still be moved around after it's been collected.
+ * Collected handles stay in here until TPFEventDispatcher sweeps them, see pollCollected.
+ */
+final class WeakComponents {
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    private WeakComponent[] table = new WeakComponent[16];
+    private int size;
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    WeakComponent get(Object component) {
+        int mask = table.length - 1;
+        int i = slot(System.identityHashCode(component), mask);
+        WeakComponent current;
+        while ((current = table[i]) != null) {
+            if (current.get() == component) return current;
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    //The caller checks get first, there's no check for a duplicate here.
+    WeakComponent add(Object component) {
+        if ((size + 1) * 2 > table.length) resize(table.length * 2);
+        WeakComponent weak = new WeakComponent(component, queue);
+        insert(weak);
+        size++;
+        return weak;
+    }
+
+    //Same backward shift as LongObjectMap.remove, by handle instead of by component since it may already be collected.
+    boolean remove(WeakComponent weak) {
+        int mask = table.length - 1;
+        int i = slot(weak.hash, mask);
+        WeakComponent current;
+        while ((current = table[i]) != null) {
+            if (current == weak) {
+                int gap = i;
+                int next = (i + 1) & mask;
+                while ((current = table[next]) != null) {
+                    int home = slot(current.hash, mask);
+                    if (((next - home) & mask) >= ((next - gap) & mask)) {
+                        table[gap] = current;
+                        gap = next;
+                    }
+                    next = (next + 1) & mask;
+                }
+                table[gap] = null;
+                size--;
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    //Next handle whose component has been collected, null if there aren't any. Doesn't take it out of the table.
+    WeakComponent pollCollected() {
+        return (WeakComponent) queue.poll();
+    }
+
+    private void insert(WeakComponent weak) {
+        int mask = table.length - 1;
+        int i = slot(weak.hash, mask);
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = weak;
+    }
+
+    private void resize(int capacity) {
+        WeakComponent[] old = table;
+        table = new WeakComponent[capacity];
+        for (WeakComponent weak : old) {
+            if (weak != null) insert(weak);
+        }
+    }
+
+    private static int slot(int hash, int mask) {
+        int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -5,12 +5,19 @@ import java.util.Collections;
 import java.util.List;
 
 public abstract class EventAdapter<T> {
-    private final T event;
-    private boolean propagationStopped = false;
-    private String direction = "down"; // or "up"
-    private final List<Object> visitedComponentsUpstream = new ArrayList<>();
-    private final List<Object> visitedComponentsDownstream = new ArrayList<>();
+    //Default for new adapters. Recording who an event visited costs a list add per component, so it's off unless asked for.
+    private static final boolean TRACE_BY_DEFAULT = Boolean.getBoolean("tpf.traceEvents");
+
+    //Not final, so dispatchers can reuse adapters, see reset.
+    private T event;
+    //Volatile so parallel children see it, see TPFNode.parallelChildren
+    private volatile boolean propagationStopped = false;
+    private EventDirection direction = EventDirection.DOWN;
+    //Only made once something gets recorded.
+    private List<Object> visitedComponentsUpstream;
+    private List<Object> visitedComponentsDownstream;
     private Class<?> endpoint;
+    private boolean tracing = TRACE_BY_DEFAULT;
 
 
     public EventAdapter(T event) {
@@ -27,14 +34,18 @@ public abstract class EventAdapter<T> {
         return this.endpoint;
     }
 
-    public String getDirection() {
+    public EventDirection getDirection() {
         return direction;
     }
 
-    public void setDirection(String direction) {
+    public void setDirection(EventDirection direction) {
         this.direction = direction;
     }
 
+    protected void setEndPoint(Class<?> endpoint) {
+        this.endpoint = endpoint;
+    }
+
     public boolean isPropagationStopped() {
         return propagationStopped;
     }
@@ -43,23 +54,60 @@ public abstract class EventAdapter<T> {
         this.propagationStopped = true;
     }
 
+    //Undoes stopPropagation, for running part of an event again (TickScheduler's deferred subtrees). Not for handlers.
+    public void resumePropagation() {
+        this.propagationStopped = false;
+    }
+
+    /***
+     * Turns recording of visited components on or off for this adapter. Off by default, unless -Dtpf.traceEvents=true is set.
+     */
+    public void setTracing(boolean tracing) {
+        this.tracing = tracing;
+    }
+
+    public boolean isTracing() {
+        return tracing;
+    }
+
     public void recordVisitedUpstream(Object component) {
+        if (!tracing) return;
+        if (visitedComponentsUpstream == null) visitedComponentsUpstream = new ArrayList<>();
         visitedComponentsUpstream.add(component);
     }
 
     public void recordVisistedDownStream(Object component){
+        if (!tracing) return;
+        if (visitedComponentsDownstream == null) visitedComponentsDownstream = new ArrayList<>();
         visitedComponentsDownstream.add(component);
     }
 
     public List<Object> getVisitedUpstreamComponents() {
-        return Collections.unmodifiableList(visitedComponentsUpstream);
+        return visitedComponentsUpstream == null ? Collections.emptyList() : Collections.unmodifiableList(visitedComponentsUpstream);
     }
 
     public List<Object> getVisitedDownstreamComponents(){
-        return Collections.unmodifiableList(visitedComponentsDownstream);
+        return visitedComponentsDownstream == null ? Collections.emptyList() : Collections.unmodifiableList(visitedComponentsDownstream);
+    }
+
+    //Key used to pick between keyed children. Null means every one of them gets it.
+    public Object getRoutingKey(){
+        return null;
     }
 
     public Class<?> getEffectiveEventType(){
         return getEvent().getClass();
     }
+
+    /***
+     * Makes the adapter look brand new, holding a different event. Tracing and the endpoint are left alone.
+     * Only for whoever owns the adapter, handlers shouldn't be holding on to adapters past their call anyway.
+     */
+    protected void reset(T event) {
+        this.event = event;
+        this.propagationStopped = false;
+        this.direction = EventDirection.DOWN;
+        if (visitedComponentsUpstream != null) visitedComponentsUpstream.clear();
+        if (visitedComponentsDownstream != null) visitedComponentsDownstream.clear();
+    }
 }
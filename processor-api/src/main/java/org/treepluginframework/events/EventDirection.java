@@ -0,0 +1,12 @@
+package org.treepluginframework.events;
+
+/***
+ * Which way an event travels through the tree from the component it's emitted from.
+ */
+public enum EventDirection {
+    //To the component and everything under it. The default.
+    DOWN,
+    //To the component and then each of its ancestors, closest first. With an endpoint set it instead climbs to the
+    //closest ancestor of that class and goes DOWN from there.
+    UP
+}
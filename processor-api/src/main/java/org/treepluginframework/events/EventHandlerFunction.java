@@ -0,0 +1,11 @@
+package org.treepluginframework.events;
+
+/***
+ * A single EventSubscription method that takes an adapter, spun by LambdaMetafactory at runtime.
+ * Methods that only take the event are spun into a java.util.function.BiConsumer instead.
+ * Has to be public, the spun class is defined next to the subscriber class and implements this.
+ */
+@FunctionalInterface
+public interface EventHandlerFunction {
+    void handle(Object target, Object event, EventAdapter<?> adapter);
+}
@@ -0,0 +1,10 @@
+package org.treepluginframework.events;
+
+/***
+ * Calls the EventSubscription methods of a single subscriber class.
+ * TPFEventSubscriberProcessor generates one of these per subscriber class (ClassName_TPFInvoker), with a switch
+ * on the handlerId that it wrote into event.json, so the dispatcher never has to go through Method.invoke.
+ */
+public interface EventInvoker {
+    void invoke(int handlerId, Object target, Object event, EventAdapter<?> adapter) throws Throwable;
+}
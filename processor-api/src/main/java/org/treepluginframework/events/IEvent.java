@@ -4,8 +4,19 @@ public class IEvent {
 
     private boolean propagationStopped = false;
 
-    public String getDirection(){
-        return "down";
+    //Override to send the event UP instead, see EventDirection.
+    public EventDirection getDirection(){
+        return EventDirection.DOWN;
+    }
+
+    //Class of the ancestor an UP event should climb to before going back down. Null just bubbles to the top.
+    public Class<?> getEndPoint(){
+        return null;
+    }
+
+    //Only children registered under this key get the event, see TPFEventDispatcher.register(parent, component, key). Null goes to all of them.
+    public Object routingKey(){
+        return null;
     }
 
 
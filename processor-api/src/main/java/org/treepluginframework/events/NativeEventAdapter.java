@@ -3,5 +3,26 @@ package org.treepluginframework.events;
 public class NativeEventAdapter extends EventAdapter<IEvent>{
     public NativeEventAdapter(IEvent event) {
         super(event);
+        takeRouting(event);
+    }
+
+    //Public so the dispatcher can pool these, see EventAdapter.reset.
+    @Override
+    public void reset(IEvent event) {
+        super.reset(event);
+        takeRouting(event);
+    }
+
+    @Override
+    public Object getRoutingKey() {
+        IEvent event = getEvent();
+        return event == null ? null : event.routingKey();
+    }
+
+    //Native events pick their own direction and endpoint.
+    private void takeRouting(IEvent event) {
+        if (event == null) return;
+        setDirection(event.getDirection());
+        setEndPoint(event.getEndPoint());
     }
 }
@@ -4,4 +4,8 @@ package org.treepluginframework.hooks;
     When an event has finished processing.
  */
 public class TPFEventCompletionLog extends TPFEventLog{
+    //Sequence of the event's TPFEventStartLog.
+    public long startSequence;
+    public Class<?> eventType;
+    public boolean propagationStopped;
 }
@@ -1,8 +1,18 @@
 package org.treepluginframework.hooks;
 
-import java.util.UUID;
-
+/*
+    Base of everything published to a TPFHookBus.
+    The sequence is handed out by the bus when the log is published, 0 until then.
+ */
 public abstract class TPFEventLog {
     private final long timestamp = System.currentTimeMillis();
-    private final UUID eventUUID = UUID.randomUUID();
+    long sequence;
+
+    public long getTimestamp(){
+        return timestamp;
+    }
+
+    public long getSequence(){
+        return sequence;
+    }
 }
@@ -6,7 +6,14 @@ import java.util.UUID;
     When an event goes from one node, to another
  */
 public class TPFEventPropagationLog extends TPFEventLog{
-    //If it's the first call, the origin object UUID will be null.
+    //If it's the first call, the origin object id will be TPFNodeIds.NONE (0).
+    public long originObjectId;
+    public long currentObjectId;
+    //The same two ids as getNodeIds().toUUID gives them (origin null on the first call), for listeners written against the old UUID fields.
+    @Deprecated
     public UUID originObjectUUID;
+    @Deprecated
     public UUID currentObjectUUID;
+    //Sequence of the event's TPFEventStartLog.
+    public long startSequence;
 }
@@ -6,7 +6,11 @@ import java.util.UUID;
     When an event has started.
  */
 public class TPFEventStartLog extends TPFEventLog{
-    //The UUID of the object that will get this event first.
+    //The id of the object that will get this event first.
+    public long firstObjectId;
+    //firstObjectId as getNodeIds().toUUID gives it, for listeners written against the old UUID field.
+    @Deprecated
     public UUID firstObjectUUID;
+    public Class<?> eventType;
 
 }
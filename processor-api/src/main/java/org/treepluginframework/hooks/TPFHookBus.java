@@ -0,0 +1,156 @@
+package org.treepluginframework.hooks;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/***
+ * Where every TPFEventLog goes. Anything that would publish asks wants(type) first, and only builds the log if it says yes,
+ * so with no sink attached (and recording off) tracing costs one volatile read and never allocates.
+ *
+ * Published logs get a sequence number (1, 2, 3...) and land in a ring buffer holding the last capacity logs. Only the ring's
+ * array is allocated up front, the logs in it aren't reused: every published log is its own object, since sinks are free to
+ * keep the ones they get. So a sampled event costs one log object per publish, it's only skipping one that allocates nothing.
+ * Sinks get each log as it's published, poll lets something read the ring at its own pace instead.
+ */
+public class TPFHookBus {
+    private static final TPFHookSink[] NO_SINKS = new TPFHookSink[0];
+
+    //Per log type: keep one of every oneIn.
+    private static final class Sampling {
+        volatile int oneIn = 1;
+        final AtomicLong seen = new AtomicLong();
+    }
+
+    private final ClassValue<Sampling> sampling = new ClassValue<>() {
+        @Override
+        protected Sampling computeValue(Class<?> type) {
+            return new Sampling();
+        }
+    };
+
+    private final AtomicReferenceArray<TPFEventLog> ring;
+    private final int mask;
+    private final AtomicLong nextSequence = new AtomicLong(1);
+
+    //Copied on every change, publish just reads the array.
+    private volatile TPFHookSink[] sinks = NO_SINKS;
+    private volatile boolean recording = false;
+
+    public TPFHookBus(){
+        this(4096);
+    }
+
+    //Rounded up to a power of two.
+    public TPFHookBus(int capacity){
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public synchronized void addSink(TPFHookSink sink){
+        if (sink == null) throw new IllegalArgumentException("Sink cannot be null");
+        TPFHookSink[] current = sinks;
+        TPFHookSink[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = sink;
+        sinks = updated;
+    }
+
+    //Only gets logs of type (or subclasses of it).
+    public void addSink(Class<? extends TPFEventLog> type, TPFHookSink sink){
+        if (sink == null) throw new IllegalArgumentException("Sink cannot be null");
+        addSink(new TypedSink(type, sink));
+    }
+
+    public synchronized void removeSink(TPFHookSink sink){
+        TPFHookSink[] current = sinks;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == sink || (current[i] instanceof TypedSink typed && typed.sink == sink)) {
+                TPFHookSink[] updated = new TPFHookSink[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                sinks = updated.length == 0 ? NO_SINKS : updated;
+                return;
+            }
+        }
+    }
+
+    /***
+     * Keeps logs going into the ring buffer even without a sink, for reading with poll.
+     */
+    public void setRecording(boolean recording){
+        this.recording = recording;
+    }
+
+    /***
+     * Keeps one of every oneIn logs of exactly this type, 1 keeps all of them. The dispatcher samples whole events:
+     * if a TPFEventStartLog is dropped, that event's propagation and completion logs are too.
+     */
+    public void setSampling(Class<? extends TPFEventLog> type, int oneIn){
+        if (oneIn < 1) throw new IllegalArgumentException("oneIn has to be at least 1");
+        sampling.get(type).oneIn = oneIn;
+    }
+
+    public boolean isActive(){
+        return recording || sinks.length != 0;
+    }
+
+    /***
+     * Whether a log of this type should be built and published right now. Counts towards sampling, so call it once per log.
+     */
+    public boolean wants(Class<? extends TPFEventLog> type){
+        if (!recording && sinks.length == 0) return false;
+        Sampling typeSampling = sampling.get(type);
+        int oneIn = typeSampling.oneIn;
+        return oneIn == 1 || typeSampling.seen.getAndIncrement() % oneIn == 0;
+    }
+
+    //Stamps the log's sequence, puts it in the ring, then hands it to every sink. A sink throwing doesn't stop the others.
+    public void publish(TPFEventLog log){
+        long sequence = nextSequence.getAndIncrement();
+        log.sequence = sequence;
+        ring.lazySet((int) (sequence & mask), log);
+
+        TPFHookSink[] current = sinks;
+        for (TPFHookSink sink : current) {
+            try {
+                sink.accept(log);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    //Sequence the next published log will get.
+    public long getNextSequence(){
+        return nextSequence.get();
+    }
+
+    /***
+     * Hands every log still in the ring from fromSequence onwards to sink, oldest first, and returns the sequence to pass next time.
+     * Logs that were already overwritten (the reader fell more than capacity behind) are skipped.
+     * A sequence another thread has taken but not written into the ring yet ends the poll there, the next one starts with it.
+     */
+    public long poll(long fromSequence, TPFHookSink sink){
+        long end = nextSequence.get();
+        long start = Math.max(fromSequence, end - (mask + 1));
+        for (long sequence = Math.max(start, 1); sequence < end; sequence++) {
+            TPFEventLog log = ring.get((int) (sequence & mask));
+            //Still empty, or still holding the log from the lap before.
+            if (log == null || log.sequence < sequence) return sequence;
+            //Overwritten by a later lap.
+            if (log.sequence != sequence) continue;
+            sink.accept(log);
+        }
+        return end;
+    }
+
+    private record TypedSink(Class<? extends TPFEventLog> type, TPFHookSink sink) implements TPFHookSink {
+        @Override
+        public void accept(TPFEventLog log) {
+            if (type.isInstance(log)) sink.accept(log);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.treepluginframework.hooks;
+
+/***
+ * Gets every log published to a TPFHookBus it's attached to. Called on whatever thread published the log,
+ * which is usually the dispatching thread, so anything slow should be handed off somewhere else.
+ */
+@FunctionalInterface
+public interface TPFHookSink {
+    void accept(TPFEventLog log);
+}
@@ -8,6 +8,9 @@ import java.util.UUID;
     When an object is added to the DAG during startup(initial tree)
  */
 public class TPFDAGAdditionLog extends TPFEventLog {
-    UUID dagUUID;
+    public long dagId;
+    //dagId as getNodeIds().toUUID gives it, for listeners written against the old UUID field.
+    @Deprecated
+    public UUID dagUUID;
 
 }
@@ -2,8 +2,14 @@ package org.treepluginframework.hooks.dag;
 
 import org.treepluginframework.hooks.TPFEventLog;
 
+import java.util.UUID;
+
 /*
     When a node is removed from the DAG
  */
 public class TPFDAGDeletionLog extends TPFEventLog {
+    public long dagId;
+    //dagId as getNodeIds().toUUID gives it, for listeners written against the old UUID field.
+    @Deprecated
+    public UUID dagUUID;
 }
@@ -2,8 +2,17 @@ package org.treepluginframework.hooks.dag;
 
 import org.treepluginframework.hooks.TPFEventLog;
 
+import java.util.UUID;
+
 /*
     When an edge is added between two nodes in the DAG
  */
 public class TPFDAGEdgeAdditionLog extends TPFEventLog {
+    public long parentId;
+    public long childId;
+    //The same two ids as getNodeIds().toUUID gives them, for listeners written against the old UUID fields.
+    @Deprecated
+    public UUID parentUUID;
+    @Deprecated
+    public UUID childUUID;
 }
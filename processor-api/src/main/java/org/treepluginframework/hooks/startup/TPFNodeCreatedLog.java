@@ -6,4 +6,5 @@ import org.treepluginframework.hooks.TPFEventLog;
     When a node is created and added to the DAG during startup.
  */
 public class TPFNodeCreatedLog extends TPFEventLog {
+    public Class<?> nodeClass;
 }
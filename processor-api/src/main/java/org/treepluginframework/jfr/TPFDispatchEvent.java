@@ -0,0 +1,39 @@
+package org.treepluginframework.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/***
+ * One emit (or one emitAll run of the same type), from the first handler to the last.
+ */
+@Name("org.treepluginframework.Dispatch")
+@Label("TPF Dispatch")
+@Category("TPF")
+@Description("An event going through the TPF node graph")
+@Threshold("1 ms")
+@StackTrace(false)
+public class TPFDispatchEvent extends Event {
+    @Label("Event Type")
+    public Class<?> eventType;
+
+    @Label("Root Class")
+    @Description("Class of the node the event was emitted from")
+    public Class<?> rootClass;
+
+    @Label("Fan-out")
+    @Description("Handlers called")
+    public int fanOut;
+
+    @Label("Depth")
+    @Description("Deepest level of the graph the event reached, the root being 0")
+    public int depth;
+
+    @Label("Batch Size")
+    @Description("Events dispatched together, 1 for a plain emit")
+    public int batchSize;
+}
@@ -0,0 +1,22 @@
+package org.treepluginframework.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/***
+ * TPFValueRepository setting a node's TPFValue fields, including reading any configuration file it needed.
+ */
+@Name("org.treepluginframework.FieldInjection")
+@Label("TPF Field Injection")
+@Category("TPF")
+@Description("TPFValue fields being filled in on an object")
+public class TPFFieldInjectionEvent extends Event {
+    @Label("Object Class")
+    public Class<?> objectClass;
+
+    @Label("Fields Set")
+    public int fieldsSet;
+}
@@ -0,0 +1,61 @@
+package org.treepluginframework.jfr;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+
+/***
+ * Whether each TPF JFR event should be built right now. Every call site checks its own event, so once all recordings have
+ * stopped (or none of them enable TPF events) nothing is timed or allocated any more.
+ * Loading an Event class is what starts JFR up (a few hundred ms), so nothing touches one until a recording has been started,
+ * either with -XX:StartFlightRecording or jcmd JFR.start. The flags are worked out again whenever a recording starts or stops,
+ * so checking one is a volatile read. Each event's threshold still decides whether a built event gets committed.
+ */
+public final class TPFFlightRecorder {
+    private static volatile boolean dispatch;
+    private static volatile boolean handler;
+    private static volatile boolean nodeConstruction;
+    private static volatile boolean fieldInjection;
+
+    static {
+        //Called straight away if JFR is already up, otherwise only once a recording changes state.
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(FlightRecorder recorder) {
+                refresh();
+            }
+
+            @Override
+            public void recordingStateChanged(Recording recording) {
+                refresh();
+            }
+        });
+    }
+
+    private TPFFlightRecorder() {
+    }
+
+    private static synchronized void refresh() {
+        dispatch = EventType.getEventType(TPFDispatchEvent.class).isEnabled();
+        handler = EventType.getEventType(TPFHandlerEvent.class).isEnabled();
+        nodeConstruction = EventType.getEventType(TPFNodeConstructionEvent.class).isEnabled();
+        fieldInjection = EventType.getEventType(TPFFieldInjectionEvent.class).isEnabled();
+    }
+
+    public static boolean dispatchEnabled() {
+        return dispatch;
+    }
+
+    public static boolean handlerEnabled() {
+        return handler;
+    }
+
+    public static boolean nodeConstructionEnabled() {
+        return nodeConstruction;
+    }
+
+    public static boolean fieldInjectionEnabled() {
+        return fieldInjection;
+    }
+}
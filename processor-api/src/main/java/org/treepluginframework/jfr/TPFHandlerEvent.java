@@ -0,0 +1,26 @@
+package org.treepluginframework.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/***
+ * A single EventSubscription call. The threshold keeps the fast ones out of the recording.
+ */
+@Name("org.treepluginframework.Handler")
+@Label("TPF Handler")
+@Category("TPF")
+@Description("An EventSubscription method being called")
+@Threshold("100 us")
+@StackTrace(false)
+public class TPFHandlerEvent extends Event {
+    @Label("Node Class")
+    public Class<?> nodeClass;
+
+    @Label("Event Type")
+    public Class<?> eventType;
+}
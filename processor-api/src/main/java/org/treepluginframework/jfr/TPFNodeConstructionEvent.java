@@ -0,0 +1,19 @@
+package org.treepluginframework.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/***
+ * TPFNodeRepository calling a node's constructor during startup.
+ */
+@Name("org.treepluginframework.NodeConstruction")
+@Label("TPF Node Construction")
+@Category("TPF")
+@Description("A TPFNode being constructed")
+public class TPFNodeConstructionEvent extends Event {
+    @Label("Node Class")
+    public Class<?> nodeClass;
+}
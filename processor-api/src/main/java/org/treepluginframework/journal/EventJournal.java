@@ -0,0 +1,234 @@
+package org.treepluginframework.journal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.treepluginframework.component_architecture.BackPressurePolicy;
+import org.treepluginframework.events.EventAdapter;
+import org.treepluginframework.events.NativeEventAdapter;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/***
+ * Append only record of every event emitted through a TPFEventDispatcher (TPFEventDispatcher.setJournal), so real traffic
+ * can be replayed later with JournalReplayer.
+ *
+ * The event is serialized (Jackson) on the emitting thread, before any handler sees it. That's a deliberate trade-off against
+ * keeping the emit as cheap as possible: serializing later, on the writer thread, would race handlers changing the event,
+ * and the journal would no longer hold what was emitted. Everything else happens on the journal's own thread, writing into
+ * the memory mapped segments included.
+ * Records wait for that thread in a bounded lock free queue, what happens when it's full is the BackPressurePolicy:
+ * REJECT (the default) loses the new record and DROP_OLDEST the oldest queued one, either way it's counted in getDroppedRecords
+ * and the emit goes on. BLOCK makes the emit wait for room, only for when losing a record is worse than slowing dispatch down.
+ */
+public class EventJournal implements AutoCloseable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ObjectMapper mapper = new ObjectMapper().disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+
+    private final Queue<PendingRecord> pending = new ConcurrentLinkedQueue<>();
+    //Records in pending, taken before adding one so the queue never goes over capacity.
+    private final AtomicInteger queued = new AtomicInteger();
+    private final int capacity;
+    private final BackPressurePolicy policy;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private JournalSegment segment;
+    private int segmentIndex = 0;
+
+    private record PendingRecord(long timestampMillis, long nanoTime, long originId, Class<?> originClass, Class<?> eventClass, byte[] eventJson, Class<?> adapterClass) {
+    }
+
+    public EventJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public EventJournal(Path directory, int segmentSize) throws IOException {
+        this(directory, segmentSize, DEFAULT_CAPACITY, BackPressurePolicy.REJECT);
+    }
+
+    /***
+     * @param capacity how many records can wait for the writer thread
+     * @param policy what record does once they're all taken
+     */
+    public EventJournal(Path directory, int segmentSize, int capacity, BackPressurePolicy policy) throws IOException {
+        if (segmentSize < 1024) throw new IllegalArgumentException("Segments must be at least 1024 bytes");
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        if (policy == null) throw new IllegalArgumentException("Policy cannot be null");
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.capacity = capacity;
+        this.policy = policy;
+
+        //Never appends to an old journal, a new run starts after whatever segments are already there.
+        while (Files.exists(JournalSegment.path(directory, segmentIndex))) segmentIndex++;
+        this.segment = JournalSegment.create(directory, segmentIndex, segmentSize);
+
+        this.writerThread = Thread.ofPlatform().daemon(true).name("TPF-journal").start(this::writeLoop);
+    }
+
+    /***
+     * Called by the dispatcher for every outermost emit, before it's dispatched.
+     * @param originId the origin's graph id, what JournalReplayer looks it up by
+     */
+    public void record(Object origin, long originId, EventAdapter<?> adapter) {
+        if (!running) return;
+        //The adapter can be a pooled one, so only the event itself is kept.
+        Class<?> adapterClass = adapter instanceof NativeEventAdapter ? null : adapter.getClass();
+        Object event = adapter.getEvent();
+        byte[] json;
+        try {
+            json = mapper.writeValueAsBytes(event);
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            return;
+        }
+        PendingRecord record = new PendingRecord(System.currentTimeMillis(), System.nanoTime(), originId,
+                origin == null ? null : origin.getClass(), event.getClass(), json, adapterClass);
+
+        switch (policy) {
+            case REJECT -> {
+                if (!offer(record)) dropped.incrementAndGet();
+            }
+            case DROP_OLDEST -> {
+                while (!offer(record)) {
+                    if (take() != null) dropped.incrementAndGet();
+                }
+            }
+            case BLOCK -> {
+                while (!offer(record)) {
+                    //Checks now and then, so an emit racing close doesn't wait for a writer that's gone.
+                    if (!running || Thread.currentThread().isInterrupted()) {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                }
+            }
+        }
+    }
+
+    private boolean offer(PendingRecord record) {
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            return false;
+        }
+        pending.add(record);
+        return true;
+    }
+
+    private PendingRecord take() {
+        PendingRecord record = pending.poll();
+        if (record != null) queued.decrementAndGet();
+        return record;
+    }
+
+    public long getWrittenRecords() {
+        return written.get();
+    }
+
+    //Records that couldn't be serialized, or didn't fit in a segment at all.
+    public long getFailedRecords() {
+        return failed.get();
+    }
+
+    //Records lost to the back pressure policy (or recorded while closing).
+    public long getDroppedRecords() {
+        return dropped.get();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    //Writes out everything that was recorded before this call, then stops the writer.
+    @Override
+    public void close() throws IOException {
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        segment.force();
+        segment.close();
+    }
+
+    private void writeLoop() {
+        while (true) {
+            PendingRecord record = take();
+            if (record == null) {
+                if (!running && pending.isEmpty()) return;
+                //Idle. Polling a little later is cheaper for the dispatcher than waking this thread up on every emit.
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+                continue;
+            }
+            try {
+                write(record);
+            } catch (IOException | RuntimeException e) {
+                failed.incrementAndGet();
+            }
+        }
+    }
+
+    private void write(PendingRecord record) throws IOException {
+        byte[] origin = name(record.originClass());
+        byte[] eventClass = name(record.eventClass());
+        byte[] adapterClass = name(record.adapterClass());
+        byte[] json = record.eventJson();
+
+        int bodyLength = Long.BYTES * 3 + Integer.BYTES * 4 + origin.length + eventClass.length + adapterClass.length + json.length;
+        if (bodyLength + Integer.BYTES * 2 > segmentSize) {
+            throw new IOException("Record of " + bodyLength + " bytes doesn't fit in a segment");
+        }
+        if (!segment.fits(bodyLength)) {
+            rollSegment();
+        }
+
+        MappedByteBuffer buffer = segment.buffer();
+        buffer.putInt(bodyLength);
+        buffer.putLong(record.timestampMillis());
+        buffer.putLong(record.nanoTime());
+        buffer.putLong(record.originId());
+        putBytes(buffer, origin);
+        putBytes(buffer, eventClass);
+        putBytes(buffer, adapterClass);
+        putBytes(buffer, json);
+        written.incrementAndGet();
+    }
+
+    private void rollSegment() throws IOException {
+        //The rest of a mapped file is already zero, which reads as the end marker.
+        segment.force();
+        segment.close();
+        segment = JournalSegment.create(directory, ++segmentIndex, segmentSize);
+    }
+
+    private static byte[] name(Class<?> type) {
+        return type == null ? new byte[0] : type.getName().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(MappedByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+}
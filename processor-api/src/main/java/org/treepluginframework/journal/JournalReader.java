@@ -0,0 +1,75 @@
+package org.treepluginframework.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/***
+ * Reads back the segments an EventJournal wrote, oldest first.
+ */
+public class JournalReader {
+    private final Path directory;
+
+    public JournalReader(Path directory) {
+        this.directory = directory;
+    }
+
+    public void forEach(Consumer<JournalRecord> consumer) throws IOException {
+        for (Path file : segments()) {
+            try (JournalSegment segment = JournalSegment.open(file)) {
+                ByteBuffer buffer = segment.buffer();
+                while (buffer.remaining() >= Integer.BYTES) {
+                    int length = buffer.getInt();
+                    if (length <= 0 || length > buffer.remaining()) break;
+                    consumer.accept(read(buffer));
+                }
+            }
+        }
+    }
+
+    public List<JournalRecord> readAll() throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        forEach(records::add);
+        return records;
+    }
+
+    //Zero padded names, so sorting by name is sorting by index.
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(JournalSegment.PREFIX) && name.endsWith(JournalSegment.SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static JournalRecord read(ByteBuffer buffer) {
+        long timestampMillis = buffer.getLong();
+        long nanoTime = buffer.getLong();
+        long originId = buffer.getLong();
+        String origin = readName(buffer);
+        String eventClass = readName(buffer);
+        String adapterClass = readName(buffer);
+        byte[] json = readBytes(buffer);
+        return new JournalRecord(timestampMillis, nanoTime, originId, origin, eventClass, adapterClass, json);
+    }
+
+    private static String readName(ByteBuffer buffer) {
+        byte[] bytes = readBytes(buffer);
+        return bytes.length == 0 ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
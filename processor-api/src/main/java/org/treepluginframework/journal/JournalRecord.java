@@ -0,0 +1,14 @@
+package org.treepluginframework.journal;
+
+/***
+ * One emit, as it was written to the journal.
+ * @param timestampMillis wall clock time of the emit
+ * @param nanoTime System.nanoTime of the emit, only meaningful compared to other records of the same run
+ * @param originId graph id of the component the event was emitted from (TPFNodeIds), NONE if it wasn't in the graph
+ * @param originClass class of the component the event was emitted from
+ * @param eventClass class of the event itself
+ * @param adapterClass the EventAdapter it was emitted with, or null for a plain IEvent
+ * @param eventJson the event, as Jackson wrote it
+ */
+public record JournalRecord(long timestampMillis, long nanoTime, long originId, String originClass, String eventClass, String adapterClass, byte[] eventJson) {
+}
@@ -0,0 +1,148 @@
+package org.treepluginframework.journal;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.treepluginframework.component_architecture.TPF;
+import org.treepluginframework.component_architecture.TPFEventDispatcher;
+import org.treepluginframework.component_architecture.TPFNodeIds;
+import org.treepluginframework.events.EventAdapter;
+import org.treepluginframework.events.IEvent;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Emits a recorded journal again, against a TPF that has already been started.
+ * Origins are found by their recorded graph id, which lines up as long as this run registered its nodes in the same order
+ * as the recorded one. If the id doesn't point at a component of the recorded class, it falls back to the TPFNode of that
+ * class from the node repository, and records that can't be matched either way get skipped.
+ *
+ * Can also be run on its own: java ... org.treepluginframework.journal.JournalReplayer journalDirectory [--max-speed]
+ */
+public class JournalReplayer {
+    //One or the other. Without a TPF there's no node repository, so origins can only be found by id.
+    private final TPF tpf;
+    private final TPFEventDispatcher dispatcher;
+    private final ObjectMapper mapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private final Map<String, Class<?>> classes = new HashMap<>();
+
+    private long replayed = 0;
+    private long skipped = 0;
+
+    public JournalReplayer(TPF tpf) {
+        this.tpf = tpf;
+        this.dispatcher = null;
+    }
+
+    public JournalReplayer(TPFEventDispatcher dispatcher) {
+        this.tpf = null;
+        this.dispatcher = dispatcher;
+    }
+
+    /***
+     * @param atRecordedSpeed true to keep the gaps between emits the same as when they were recorded, false to emit as fast as possible
+     * @return how many events got emitted
+     */
+    public long replay(Path journalDirectory, boolean atRecordedSpeed) throws IOException {
+        TPFEventDispatcher dispatcher = tpf == null ? this.dispatcher : tpf.getEventDispatcher();
+        long[] firstRecorded = {Long.MIN_VALUE};
+        long start = System.nanoTime();
+
+        new JournalReader(journalDirectory).forEach(record -> {
+            if (atRecordedSpeed) {
+                if (firstRecorded[0] == Long.MIN_VALUE) firstRecorded[0] = record.nanoTime();
+                long wait = (record.nanoTime() - firstRecorded[0]) - (System.nanoTime() - start);
+                if (wait > 0) sleep(wait);
+            }
+            replay(dispatcher, record);
+        });
+        return replayed;
+    }
+
+    public long getReplayed() {
+        return replayed;
+    }
+
+    //Records whose origin, event or adapter couldn't be recreated.
+    public long getSkipped() {
+        return skipped;
+    }
+
+    private void replay(TPFEventDispatcher dispatcher, JournalRecord record) {
+        try {
+            Object origin = origin(dispatcher, record);
+            if (origin == null) {
+                skipped++;
+                return;
+            }
+
+            Class<?> eventClass = load(record.eventClass());
+            Object event = mapper.readValue(record.eventJson(), eventClass);
+            if (record.adapterClass() == null) {
+                dispatcher.emit(origin, (IEvent) event);
+            } else {
+                dispatcher.emit(origin, adapterFor(load(record.adapterClass()), event));
+            }
+            replayed++;
+        } catch (ReflectiveOperationException | IOException | ClassCastException e) {
+            skipped++;
+        }
+    }
+
+    private Object origin(TPFEventDispatcher dispatcher, JournalRecord record) throws ClassNotFoundException {
+        if (record.originId() != TPFNodeIds.NONE) {
+            //Recorded by another TPF, so the id's high bits are that one's.
+            Object node = dispatcher.getNode(dispatcher.getNodeIds().rebase(record.originId()));
+            if (node != null && node.getClass().getName().equals(record.originClass())) return node;
+        }
+        return record.originClass() == null || tpf == null ? null : tpf.getNode(load(record.originClass()));
+    }
+
+    //Adapters are rebuilt through a constructor that takes just the event, like every adapter in the repo has.
+    private static EventAdapter<?> adapterFor(Class<?> adapterClass, Object event) throws ReflectiveOperationException {
+        for (Constructor<?> constructor : adapterClass.getConstructors()) {
+            if (constructor.getParameterCount() == 1 && constructor.getParameterTypes()[0].isInstance(event)) {
+                return (EventAdapter<?>) constructor.newInstance(event);
+            }
+        }
+        throw new NoSuchMethodException(adapterClass.getName() + " has no constructor taking " + event.getClass().getName());
+    }
+
+    private Class<?> load(String name) throws ClassNotFoundException {
+        Class<?> type = classes.get(name);
+        if (type == null) {
+            type = Class.forName(name, false, JournalReplayer.class.getClassLoader());
+            classes.put(name, type);
+        }
+        return type;
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: JournalReplayer <journal directory> [--max-speed]");
+            return;
+        }
+        boolean maxSpeed = args.length > 1 && args[1].equals("--max-speed");
+
+        TPF tpf = new TPF();
+        tpf.start();
+
+        JournalReplayer replayer = new JournalReplayer(tpf);
+        long start = System.nanoTime();
+        replayer.replay(Path.of(args[0]), !maxSpeed);
+        long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.println("Replayed " + replayer.getReplayed() + " events (" + replayer.getSkipped() + " skipped) in " + tookMillis + "ms");
+    }
+}
@@ -0,0 +1,57 @@
+package org.treepluginframework.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/***
+ * One fixed size, memory mapped journal file. Records are [int length][body], and a length of 0 (or the end of the file)
+ * marks the end, so a journal that didn't get closed properly can still be read up to the last full record.
+ */
+final class JournalSegment implements AutoCloseable {
+    static final String PREFIX = "journal-";
+    static final String SUFFIX = ".tpfj";
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private JournalSegment(FileChannel channel, MappedByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    static Path path(Path directory, int index) {
+        return directory.resolve(PREFIX + String.format("%06d", index) + SUFFIX);
+    }
+
+    static JournalSegment create(Path directory, int index, int size) throws IOException {
+        FileChannel channel = FileChannel.open(path(directory, index),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new JournalSegment(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+
+    static JournalSegment open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        return new JournalSegment(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+
+    MappedByteBuffer buffer() {
+        return buffer;
+    }
+
+    //Room for a record body of this many bytes, plus its length, plus the 0 that ends the segment.
+    boolean fits(int bodyLength) {
+        return buffer.remaining() >= bodyLength + Integer.BYTES * 2;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,82 @@
+package org.treepluginframework.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/***
+ * Timing for every handler and every event type a TPFEventDispatcher sends.
+ * Off unless the JVM is started with -Dtpf.metrics=true. ENABLED is static final, so with it off the JIT drops the
+ * measuring code from the dispatch loop altogether.
+ */
+public class DispatchMetrics {
+    public static final boolean ENABLED = Boolean.getBoolean("tpf.metrics");
+
+    private record HandlerKey(Class<?> componentClass, Class<?> eventType) {
+    }
+
+    /***
+     * One handler's histogram. The dispatcher keeps hold of these so recording doesn't need a lookup.
+     */
+    public static final class HandlerMetrics {
+        private final HandlerKey key;
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private HandlerMetrics(HandlerKey key) {
+            this.key = key;
+        }
+
+        public void record(long nanos) {
+            latency.record(nanos);
+        }
+    }
+
+    public static final class EventTypeMetrics {
+        private final Class<?> eventType;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram fanOut = new LatencyHistogram();
+        private final LatencyHistogram depth = new LatencyHistogram();
+
+        private EventTypeMetrics(Class<?> eventType) {
+            this.eventType = eventType;
+        }
+
+        public void record(long nanos, int handlersCalled, int depthReached) {
+            latency.record(nanos);
+            fanOut.record(handlersCalled);
+            depth.record(depthReached);
+        }
+    }
+
+    private final Map<HandlerKey, HandlerMetrics> handlers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, EventTypeMetrics> eventTypes = new ConcurrentHashMap<>();
+
+    public HandlerMetrics handler(Class<?> componentClass, Class<?> eventType) {
+        return handlers.computeIfAbsent(new HandlerKey(componentClass, eventType), HandlerMetrics::new);
+    }
+
+    public EventTypeMetrics eventType(Class<?> eventType) {
+        return eventTypes.computeIfAbsent(eventType, EventTypeMetrics::new);
+    }
+
+    //Slowest handlers (by total time) and event types first.
+    public MetricsSnapshot snapshot() {
+        List<MetricsSnapshot.HandlerStats> handlerStats = new ArrayList<>();
+        for (HandlerMetrics metrics : handlers.values()) {
+            handlerStats.add(new MetricsSnapshot.HandlerStats(metrics.key.componentClass().getName(),
+                    metrics.key.eventType().getName(), metrics.latency.snapshot()));
+        }
+        handlerStats.sort(Comparator.comparingLong((MetricsSnapshot.HandlerStats stats) -> stats.latency().sum()).reversed());
+
+        List<MetricsSnapshot.EventTypeStats> eventStats = new ArrayList<>();
+        for (EventTypeMetrics metrics : eventTypes.values()) {
+            eventStats.add(new MetricsSnapshot.EventTypeStats(metrics.eventType.getName(),
+                    metrics.latency.snapshot(), metrics.fanOut.snapshot(), metrics.depth.snapshot()));
+        }
+        eventStats.sort(Comparator.comparingLong((MetricsSnapshot.EventTypeStats stats) -> stats.latency().sum()).reversed());
+
+        return new MetricsSnapshot(handlerStats, eventStats);
+    }
+}
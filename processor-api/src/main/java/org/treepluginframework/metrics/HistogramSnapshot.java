@@ -0,0 +1,10 @@
+package org.treepluginframework.metrics;
+
+/***
+ * What a LatencyHistogram held at one point. p50 and p99 are bucket upper bounds, see LatencyHistogram.
+ */
+public record HistogramSnapshot(long count, long sum, long p50, long p99, long max) {
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+}
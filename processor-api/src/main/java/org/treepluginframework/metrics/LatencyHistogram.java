@@ -0,0 +1,51 @@
+package org.treepluginframework.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * Counts values into power of two buckets (bucket b holds 2^b up to 2^(b+1) - 1), which is plenty to tell a 2µs handler
+ * from a 2ms one. Percentiles come out as the top of the bucket they land in (capped at the max), so they're never under the real value.
+ * Safe to record into from several threads, parallel children run handlers at the same time.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(value | 1));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        //A bucket's top can be past anything actually recorded, max is exact.
+        long highest = max.get();
+        return new HistogramSnapshot(total, sum.sum(), Math.min(percentile(counts, total, 0.50), highest),
+                Math.min(percentile(counts, total, 0.99), highest), highest);
+    }
+
+    private static long percentile(long[] counts, long total, double percentile) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return i == 63 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,26 @@
+package org.treepluginframework.metrics;
+
+import java.util.List;
+
+/***
+ * Everything DispatchMetrics had recorded when snapshot() was called. Times are in nanoseconds.
+ */
+public record MetricsSnapshot(List<HandlerStats> handlers, List<EventTypeStats> eventTypes) {
+    /***
+     * One EventSubscription method.
+     * @param latency nanoseconds per call
+     */
+    public record HandlerStats(String componentClass, String eventType, HistogramSnapshot latency) {
+    }
+
+    /***
+     * Every emit of one event type.
+     * @param latency nanoseconds per emit, the whole walk
+     * @param fanOut handlers called per emit
+     * @param depth deepest level of the tree reached per emit, the root being 0
+     */
+    public record EventTypeStats(String eventType, HistogramSnapshot latency, HistogramSnapshot fanOut, HistogramSnapshot depth) {
+    }
+
+    public static final MetricsSnapshot EMPTY = new MetricsSnapshot(List.of(), List.of());
+}
@@ -0,0 +1,128 @@
+package org.treepluginframework.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Supplier;
+
+/***
+ * Writes a MetricsSnapshot in the Prometheus text format, to a file (for the node exporter's textfile collector)
+ * or from a small HTTP endpoint on localhost.
+ */
+public class PrometheusExporter {
+    private final Supplier<MetricsSnapshot> metrics;
+
+    public PrometheusExporter(Supplier<MetricsSnapshot> metrics) {
+        this.metrics = metrics;
+    }
+
+    //Written next to the file and moved over it, so a scrape never sees half a file.
+    public void writeTo(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temp, format(metrics.get()));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /***
+     * Serves the metrics at http://localhost:port/metrics until the returned server is stopped.
+     */
+    public HttpServer serve(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = format(metrics.get()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    public static String format(MetricsSnapshot snapshot) {
+        StringBuilder out = new StringBuilder();
+
+        header(out, "tpf_handler_calls_total", "counter", "EventSubscription calls");
+        for (MetricsSnapshot.HandlerStats stats : snapshot.handlers()) {
+            sample(out, "tpf_handler_calls_total", handlerLabels(stats), stats.latency().count());
+        }
+        header(out, "tpf_handler_seconds_total", "counter", "Time spent inside EventSubscription methods");
+        for (MetricsSnapshot.HandlerStats stats : snapshot.handlers()) {
+            sample(out, "tpf_handler_seconds_total", handlerLabels(stats), seconds(stats.latency().sum()));
+        }
+        header(out, "tpf_handler_latency_seconds", "gauge", "Per call latency, p50/p99 are log2 bucket upper bounds");
+        for (MetricsSnapshot.HandlerStats stats : snapshot.handlers()) {
+            quantiles(out, "tpf_handler_latency_seconds", handlerLabels(stats), stats.latency(), true);
+        }
+
+        header(out, "tpf_dispatch_total", "counter", "Emits per event type");
+        for (MetricsSnapshot.EventTypeStats stats : snapshot.eventTypes()) {
+            sample(out, "tpf_dispatch_total", eventLabels(stats), stats.latency().count());
+        }
+        header(out, "tpf_dispatch_seconds_total", "counter", "Time spent dispatching per event type");
+        for (MetricsSnapshot.EventTypeStats stats : snapshot.eventTypes()) {
+            sample(out, "tpf_dispatch_seconds_total", eventLabels(stats), seconds(stats.latency().sum()));
+        }
+        header(out, "tpf_dispatch_latency_seconds", "gauge", "Per emit latency, p50/p99 are log2 bucket upper bounds");
+        for (MetricsSnapshot.EventTypeStats stats : snapshot.eventTypes()) {
+            quantiles(out, "tpf_dispatch_latency_seconds", eventLabels(stats), stats.latency(), true);
+        }
+        header(out, "tpf_dispatch_fanout", "gauge", "Handlers called per emit");
+        for (MetricsSnapshot.EventTypeStats stats : snapshot.eventTypes()) {
+            quantiles(out, "tpf_dispatch_fanout", eventLabels(stats), stats.fanOut(), false);
+        }
+        header(out, "tpf_dispatch_depth", "gauge", "Deepest tree level reached per emit");
+        for (MetricsSnapshot.EventTypeStats stats : snapshot.eventTypes()) {
+            quantiles(out, "tpf_dispatch_depth", eventLabels(stats), stats.depth(), false);
+        }
+        return out.toString();
+    }
+
+    private static String handlerLabels(MetricsSnapshot.HandlerStats stats) {
+        return "component=\"" + escape(stats.componentClass()) + "\",event=\"" + escape(stats.eventType()) + "\"";
+    }
+
+    private static String eventLabels(MetricsSnapshot.EventTypeStats stats) {
+        return "event=\"" + escape(stats.eventType()) + "\"";
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void quantiles(StringBuilder out, String name, String labels, HistogramSnapshot histogram, boolean nanos) {
+        if (nanos) {
+            sample(out, name, labels + ",quantile=\"0.5\"", seconds(histogram.p50()));
+            sample(out, name, labels + ",quantile=\"0.99\"", seconds(histogram.p99()));
+            sample(out, name, labels + ",quantile=\"1\"", seconds(histogram.max()));
+        } else {
+            sample(out, name, labels + ",quantile=\"0.5\"", histogram.p50());
+            sample(out, name, labels + ",quantile=\"0.99\"", histogram.p99());
+            sample(out, name, labels + ",quantile=\"1\"", histogram.max());
+        }
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1_000_000_000.0;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -8,16 +8,25 @@ public class MethodSignature {
     public List<String> parameterTypes = new ArrayList<>();
     public int priority;
     public boolean expectsAdapter;
+    public boolean useSuperClasses;
+    public boolean deferrable;
+    //Case inside of the generated invoker's switch. -1 when no invoker could be generated for the method.
+    public int handlerId = -1;
 
     public MethodSignature(){
 
     }
 
     public MethodSignature(String methodName, List<String> parameterNames, int priority, boolean expectsAdapter){
+        this(methodName, parameterNames, priority, expectsAdapter, false);
+    }
+
+    public MethodSignature(String methodName, List<String> parameterNames, int priority, boolean expectsAdapter, boolean useSuperClasses){
         this.methodName = methodName;
         this.parameterTypes = parameterNames;
 
         this.priority = priority;
         this.expectsAdapter = expectsAdapter;
+        this.useSuperClasses = useSuperClasses;
     }
 }
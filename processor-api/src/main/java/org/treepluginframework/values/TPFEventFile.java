@@ -9,6 +9,11 @@ import java.util.Map;
 public class TPFEventFile {
     //Class Name, Cache of method sigs.
     public Map<String,HashMap<String,MethodSignature>> methodCache = new HashMap<>();
+    //Class Name, generated EventInvoker class name. Classes that aren't in here fall back to reflection.
+    public Map<String,String> invokers = new HashMap<>();
+    //Event type subscribed to with useSuperClasses -> subclasses of it that were in the same compilation.
+    //Lets the dispatcher resolve those pairs at startup instead of on the first emit.
+    public Map<String,List<String>> eventHierarchy = new HashMap<>();
 
     public TPFEventFile(){
 
@@ -17,4 +22,15 @@ public class TPFEventFile {
     public TPFEventFile(Map<String,HashMap<String,MethodSignature>> methodCache){
         this.methodCache = methodCache;
     }
+
+    public TPFEventFile(Map<String,HashMap<String,MethodSignature>> methodCache, Map<String,String> invokers){
+        this.methodCache = methodCache;
+        this.invokers = invokers;
+    }
+
+    public TPFEventFile(Map<String,HashMap<String,MethodSignature>> methodCache, Map<String,String> invokers, Map<String,List<String>> eventHierarchy){
+        this.methodCache = methodCache;
+        this.invokers = invokers;
+        this.eventHierarchy = eventHierarchy;
+    }
 }
@@ -11,7 +11,11 @@ import org.treepluginframework.values.TPFMetadataFile;
 import javax.annotation.processing.*;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.DeclaredType;
@@ -21,6 +25,7 @@ import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
 import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
 import javax.tools.StandardLocation;
 import java.io.IOException;
 import java.io.Writer;
@@ -50,6 +55,11 @@ public class TPFEventSubscriberProcessor extends AbstractProcessor {
 
         System.out.println("Dealing with the events");
         Map<String,HashMap<String,MethodSignature>> savedMethods = new HashMap<>();
+        //Class Name, (Event Name, method), so that the invokers can be generated once everything is collected.
+        Map<String,LinkedHashMap<String,ExecutableElement>> savedElements = new HashMap<>();
+        Map<String,TypeElement> subscriberClasses = new HashMap<>();
+        //Event types that something subscribes to with useSuperClasses
+        Map<String,TypeElement> polymorphicEventTypes = new HashMap<>();
 
         for(Element m : eventAnnotations){
            ExecutableElement method = (ExecutableElement)m;
@@ -105,14 +115,163 @@ public class TPFEventSubscriberProcessor extends AbstractProcessor {
 
 
             EventSubscription eS = method.getAnnotation(EventSubscription.class);
-            classMethods.put(qualifiedName, new MethodSignature(method.getSimpleName().toString(), paramTypeNames, eS.priority(), parameters.size() == 2));
+            MethodSignature signature = new MethodSignature(method.getSimpleName().toString(), paramTypeNames, eS.priority(), parameters.size() == 2, eS.useSuperClasses());
+            signature.deferrable = eS.deferrable();
+            classMethods.put(qualifiedName, signature);
+            if(eS.useSuperClasses()){
+                polymorphicEventTypes.put(toRuntimeClassName(typeElement, processingEnv.getElementUtils()), typeElement);
+            }
+            savedElements.computeIfAbsent(enclosingClassName, k -> new LinkedHashMap<>()).put(qualifiedName, method);
+            subscriberClasses.put(enclosingClassName, (TypeElement) method.getEnclosingElement());
+        }
+
+        Map<String,String> invokers = new HashMap<>();
+        for(String className : savedElements.keySet()){
+            String invokerName = generateInvoker(subscriberClasses.get(className), savedElements.get(className), savedMethods.get(className));
+            if(invokerName != null){
+                invokers.put(className, invokerName);
+            }
         }
 
-        TPFEventFile eventFile = new TPFEventFile(savedMethods);
+        Map<String,List<String>> eventHierarchy = findKnownSubclasses(polymorphicEventTypes, roundEnv);
+
+        TPFEventFile eventFile = new TPFEventFile(savedMethods, invokers, eventHierarchy);
         writeEventFile(eventFile);
         return true;
     }
 
+    /***
+     * Every class in this compilation that extends (or implements) an event type that's subscribed to with useSuperClasses.
+     * Anything from other jars (server events, other plugins) still gets resolved at runtime, just on its first emit instead.
+     */
+    private Map<String,List<String>> findKnownSubclasses(Map<String,TypeElement> polymorphicEventTypes, RoundEnvironment roundEnv){
+        Map<String,List<String>> hierarchy = new HashMap<>();
+        if(polymorphicEventTypes.isEmpty()) return hierarchy;
+
+        Types typeUtils = processingEnv.getTypeUtils();
+        Elements elementUtils = processingEnv.getElementUtils();
+
+        List<TypeElement> compiledTypes = new ArrayList<>();
+        Deque<Element> toVisit = new ArrayDeque<>(roundEnv.getRootElements());
+        while(!toVisit.isEmpty()){
+            Element current = toVisit.pop();
+            if(!(current instanceof TypeElement type)) continue;
+            compiledTypes.add(type);
+            toVisit.addAll(type.getEnclosedElements());
+        }
+
+        for(Map.Entry<String,TypeElement> entry : polymorphicEventTypes.entrySet()){
+            TypeMirror baseType = typeUtils.erasure(entry.getValue().asType());
+            List<String> subclasses = hierarchy.computeIfAbsent(entry.getKey(), k -> new ArrayList<>());
+            for(TypeElement type : compiledTypes){
+                if(type.getKind() != ElementKind.CLASS || type.equals(entry.getValue())) continue;
+                if(typeUtils.isAssignable(typeUtils.erasure(type.asType()), baseType)){
+                    subclasses.add(toRuntimeClassName(type, elementUtils));
+                }
+            }
+        }
+
+        return hierarchy;
+    }
+
+    /***
+     * Writes ClassName_TPFInvoker next to the subscriber class. It switches on the handlerId stored in the MethodSignature,
+     * and calls the method directly instead of through Method.invoke.
+     * Methods that can't be called from the same package (private methods, private classes) keep handlerId -1 and are left to reflection.
+     * @return The runtime name of the generated class, or null if nothing could be generated.
+     */
+    private String generateInvoker(TypeElement subscriberClass, LinkedHashMap<String,ExecutableElement> methods, HashMap<String,MethodSignature> signatures){
+        Types typeUtils = processingEnv.getTypeUtils();
+        Elements elementUtils = processingEnv.getElementUtils();
+
+        PackageElement subscriberPackage = elementUtils.getPackageOf(subscriberClass);
+        if(!isReachableFromPackage(subscriberClass, subscriberPackage)) return null;
+
+        String packageName = subscriberPackage.getQualifiedName().toString();
+        String runtimeName = toRuntimeClassName(subscriberClass, elementUtils);
+        String simpleRuntimeName = packageName.isEmpty() ? runtimeName : runtimeName.substring(packageName.length() + 1);
+        String invokerSimpleName = simpleRuntimeName.replace('$', '_') + "_TPFInvoker";
+        String targetType = typeUtils.erasure(subscriberClass.asType()).toString();
+
+        StringBuilder cases = new StringBuilder();
+        int handlerId = 0;
+        for(Map.Entry<String,ExecutableElement> entry : methods.entrySet()){
+            ExecutableElement method = entry.getValue();
+            if(method.getModifiers().contains(Modifier.PRIVATE) || !parametersReachable(method, subscriberPackage)) continue;
+
+            List<? extends VariableElement> parameters = method.getParameters();
+            String receiver = method.getModifiers().contains(Modifier.STATIC) ? targetType : "((" + targetType + ") target)";
+            StringBuilder call = new StringBuilder(receiver).append('.').append(method.getSimpleName()).append('(');
+            call.append("(").append(typeUtils.erasure(parameters.get(0).asType())).append(") event");
+            if(parameters.size() == 2){
+                call.append(", (").append(typeUtils.erasure(parameters.get(1).asType())).append(") adapter");
+            }
+            call.append(')');
+
+            cases.append("            case ").append(handlerId).append(" -> ").append(call).append(";\n");
+            signatures.get(entry.getKey()).handlerId = handlerId;
+            handlerId++;
+        }
+
+        if(handlerId == 0) return null;
+
+        String qualifiedInvokerName = packageName.isEmpty() ? invokerSimpleName : packageName + "." + invokerSimpleName;
+        StringBuilder source = new StringBuilder();
+        if(!packageName.isEmpty()){
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("@javax.annotation.processing.Generated(\"").append(TPFEventSubscriberProcessor.class.getName()).append("\")\n");
+        source.append("public final class ").append(invokerSimpleName).append(" implements org.treepluginframework.events.EventInvoker {\n");
+        source.append("    @Override\n");
+        source.append("    public void invoke(int handlerId, Object target, Object event, org.treepluginframework.events.EventAdapter<?> adapter) throws Throwable {\n");
+        source.append("        switch (handlerId) {\n");
+        source.append(cases);
+        source.append("            default -> throw new IllegalArgumentException(\"No handler \" + handlerId + \" in ").append(runtimeName).append("\");\n");
+        source.append("        }\n");
+        source.append("    }\n");
+        source.append("}\n");
+
+        try {
+            JavaFileObject file = filer.createSourceFile(qualifiedInvokerName, subscriberClass);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source.toString());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Unable to generate " + qualifiedInvokerName + ", falling back to reflection: " + e.getMessage(), subscriberClass);
+            for(MethodSignature sig : signatures.values()){
+                sig.handlerId = -1;
+            }
+            return null;
+        }
+
+        return qualifiedInvokerName;
+    }
+
+    //The generated invoker lives in the same package, so anything that isn't private (all the way out) can be called from it.
+    //Types from other packages have to be public all the way out instead.
+    private boolean isReachableFromPackage(TypeElement typeElement, PackageElement fromPackage){
+        boolean samePackage = processingEnv.getElementUtils().getPackageOf(typeElement).equals(fromPackage);
+        Element current = typeElement;
+        while(current instanceof TypeElement){
+            Set<Modifier> modifiers = current.getModifiers();
+            if(modifiers.contains(Modifier.PRIVATE)) return false;
+            if(!samePackage && !modifiers.contains(Modifier.PUBLIC)) return false;
+            NestingKind nesting = ((TypeElement) current).getNestingKind();
+            if(nesting == NestingKind.LOCAL || nesting == NestingKind.ANONYMOUS) return false;
+            current = current.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private boolean parametersReachable(ExecutableElement method, PackageElement fromPackage){
+        for(VariableElement param : method.getParameters()){
+            TypeMirror erased = processingEnv.getTypeUtils().erasure(param.asType());
+            if(erased.getKind() != TypeKind.DECLARED) return false;
+            if(!isReachableFromPackage((TypeElement) ((DeclaredType) erased).asElement(), fromPackage)) return false;
+        }
+        return true;
+    }
+
     private String toRuntimeClassName(TypeElement typeElement, Elements elementUtils) {
         String packageName = elementUtils.getPackageOf(typeElement).getQualifiedName().toString();
         String fullQualifiedName = typeElement.getQualifiedName().toString();
@@ -0,0 +1,171 @@
+import org.junit.Test;
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.component_architecture.BackPressurePolicy;
+import org.treepluginframework.component_architecture.TPFEventDispatcher;
+import org.treepluginframework.events.EventAdapter;
+import org.treepluginframework.events.IEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestAsyncEmit {
+    public static class PingEvent extends IEvent {
+    }
+
+    //Holds the drain thread inside the first ping until released, so the queue behind it can be filled up.
+    public static class Gate {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile int pings;
+
+        @EventSubscription
+        public void onPing(PingEvent event){
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            pings++;
+        }
+    }
+
+    private static TPFEventDispatcher dispatcher(Gate gate, BackPressurePolicy policy){
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        dispatcher.register(null, gate, false);
+        dispatcher.configureAsync(1, policy, false);
+        return dispatcher;
+    }
+
+    //First one is being dispatched, second one fills the queue.
+    private static List<CompletableFuture<EventAdapter<?>>> fill(TPFEventDispatcher dispatcher, Gate gate) throws InterruptedException {
+        List<CompletableFuture<EventAdapter<?>>> futures = new ArrayList<>();
+        futures.add(dispatcher.emitAsync(gate, new PingEvent()));
+        assertTrue(gate.entered.await(5, TimeUnit.SECONDS));
+        futures.add(dispatcher.emitAsync(gate, new PingEvent()));
+        return futures;
+    }
+
+    @Test
+    public void rejectFailsTheNewEvent() throws Exception {
+        Gate gate = new Gate();
+        TPFEventDispatcher dispatcher = dispatcher(gate, BackPressurePolicy.REJECT);
+        List<CompletableFuture<EventAdapter<?>>> futures = fill(dispatcher, gate);
+
+        CompletableFuture<EventAdapter<?>> rejected = dispatcher.emitAsync(gate, new PingEvent());
+        assertRejected(rejected);
+
+        gate.release.countDown();
+        for (CompletableFuture<EventAdapter<?>> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(2, gate.pings);
+        dispatcher.shutdownAsync(true);
+    }
+
+    @Test
+    public void dropOldestCancelsTheQueuedEvent() throws Exception {
+        Gate gate = new Gate();
+        TPFEventDispatcher dispatcher = dispatcher(gate, BackPressurePolicy.DROP_OLDEST);
+        List<CompletableFuture<EventAdapter<?>>> futures = fill(dispatcher, gate);
+
+        CompletableFuture<EventAdapter<?>> newest = dispatcher.emitAsync(gate, new PingEvent());
+        assertTrue(futures.get(1).isCancelled());
+
+        gate.release.countDown();
+        futures.get(0).get(5, TimeUnit.SECONDS);
+        newest.get(5, TimeUnit.SECONDS);
+        assertEquals(2, gate.pings);
+        dispatcher.shutdownAsync(true);
+    }
+
+    @Test
+    public void blockWaitsForRoom() throws Exception {
+        Gate gate = new Gate();
+        TPFEventDispatcher dispatcher = dispatcher(gate, BackPressurePolicy.BLOCK);
+        List<CompletableFuture<EventAdapter<?>>> futures = fill(dispatcher, gate);
+
+        CompletableFuture<CompletableFuture<EventAdapter<?>>> blocked = CompletableFuture.supplyAsync(() -> dispatcher.emitAsync(gate, new PingEvent()));
+        try {
+            blocked.get(200, TimeUnit.MILLISECONDS);
+            fail("Should still be waiting for room in the queue");
+        } catch (TimeoutException expected) {
+        }
+
+        gate.release.countDown();
+        blocked.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<EventAdapter<?>> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(3, gate.pings);
+        dispatcher.shutdownAsync(true);
+    }
+
+    @Test
+    public void everyFutureCompletesWhenShutdownRacesSubmit() throws Exception {
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Object root = new Object();
+        dispatcher.register(null, root, false);
+        dispatcher.configureAsync(4, BackPressurePolicy.BLOCK, false);
+
+        List<CompletableFuture<EventAdapter<?>>> futures = new ArrayList<>();
+        List<Thread> producers = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < 4; p++) {
+            Thread producer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 2_000; i++) {
+                    CompletableFuture<EventAdapter<?>> future = dispatcher.emitAsync(root, new PingEvent());
+                    synchronized (futures) {
+                        futures.add(future);
+                    }
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        start.countDown();
+        Thread.sleep(5);
+        dispatcher.shutdownAsync(true);
+
+        for (Thread producer : producers) {
+            producer.join(5_000);
+            assertFalse("A producer is stuck", producer.isAlive());
+        }
+        synchronized (futures) {
+            assertEquals(8_000, futures.size());
+            for (CompletableFuture<EventAdapter<?>> future : futures) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof RejectedExecutionException);
+                }
+            }
+        }
+        assertRejected(dispatcher.emitAsync(root, new PingEvent()));
+    }
+
+    private static void assertRejected(CompletableFuture<EventAdapter<?>> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected a rejection");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+}
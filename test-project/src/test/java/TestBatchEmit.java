@@ -0,0 +1,112 @@
+import org.junit.Test;
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.component_architecture.TPFEventDispatcher;
+import org.treepluginframework.events.IEvent;
+import org.treepluginframework.events.NativeEventAdapter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestBatchEmit {
+    public static class MoveEvent extends IEvent {
+        final int id;
+
+        public MoveEvent(int id){
+            this.id = id;
+        }
+    }
+
+    static final List<String> order = new ArrayList<>();
+
+    public static class High {
+        TPFEventDispatcher dispatcher;
+        Object registerOnFirst;
+        int stopId = -1;
+
+        @EventSubscription(priority = 10)
+        public void onMove(MoveEvent event, NativeEventAdapter adapter){
+            order.add("high" + event.id);
+            if (event.id == stopId) adapter.stopPropagation();
+            if (registerOnFirst != null) {
+                dispatcher.register(this, registerOnFirst, true);
+                registerOnFirst = null;
+            }
+        }
+    }
+
+    public static class Low {
+        final String name;
+
+        public Low(String name){
+            this.name = name;
+        }
+
+        @EventSubscription(priority = 1)
+        public void onMove(MoveEvent event){
+            order.add(name + event.id);
+        }
+    }
+
+    public static class Holder {
+    }
+
+    private static List<MoveEvent> moves(int count){
+        List<MoveEvent> moves = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            moves.add(new MoveEvent(i));
+        }
+        return moves;
+    }
+
+    @Test
+    public void everyHandlerRunsTheWholeBatchInPriorityOrder(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Holder root = new Holder();
+        dispatcher.register(null, root, false);
+        //Registered lowest first, the priorities put them back in order.
+        dispatcher.register(root, new Low("low"), false);
+        dispatcher.register(root, new High(), false);
+
+        dispatcher.emitAll(root, moves(3));
+
+        assertEquals(List.of("high1", "high2", "high3", "low1", "low2", "low3"), order);
+    }
+
+    @Test
+    public void stopPropagationOnlyStopsThatEvent(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Holder root = new Holder();
+        High high = new High();
+        high.stopId = 2;
+        dispatcher.register(null, root, false);
+        dispatcher.register(root, high, false);
+        dispatcher.register(root, new Low("low"), false);
+
+        dispatcher.emitAll(root, moves(3));
+
+        assertEquals(List.of("high1", "high2", "high3", "low1", "low3"), order);
+    }
+
+    @Test
+    public void afterCurrentEventRegistersOnceTheBatchIsDone(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Holder root = new Holder();
+        High high = new High();
+        high.dispatcher = dispatcher;
+        high.registerOnFirst = new Low("late");
+        dispatcher.register(null, root, false);
+        dispatcher.register(root, high, false);
+
+        dispatcher.emitAll(root, moves(3));
+        assertEquals(List.of("high1", "high2", "high3"), order);
+
+        order.clear();
+        dispatcher.emitAll(root, moves(1));
+        assertEquals(List.of("high1", "late1"), order);
+    }
+}
@@ -0,0 +1,194 @@
+import org.junit.Test;
+import org.treepluginframework.component_architecture.DAG;
+import org.treepluginframework.component_architecture.Subtree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+//The order itself is private, so these check what it's for: every edge that keeps the graph acyclic goes in, every other one is refused.
+public class TestDAGOrdering {
+    static final class V {
+        final String name;
+
+        V(String name){
+            this.name = name;
+        }
+
+        @Override
+        public String toString(){
+            return name;
+        }
+    }
+
+    private static boolean tryEdge(DAG dag, Object from, Object to){
+        try {
+            dag.addEdge(from, to);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static V[] chain(DAG dag, String prefix, int length){
+        V[] nodes = new V[length];
+        for (int i = 0; i < length; i++) {
+            nodes[i] = new V(prefix + i);
+            dag.addEdge(i == 0 ? null : nodes[i - 1], nodes[i]);
+        }
+        return nodes;
+    }
+
+    @Test
+    public void backEdgeIsRefusedAndChangesNothing(){
+        DAG dag = new DAG();
+        V[] c = chain(dag, "c", 4);
+
+        assertFalse(tryEdge(dag, c[3], c[0]));
+        assertFalse(tryEdge(dag, c[2], c[1]));
+        assertFalse(tryEdge(dag, c[1], c[1]));
+        assertTrue(dag.getChildren(c[3]).isEmpty());
+        assertEquals(List.of(c[0]), new ArrayList<>(dag.getParents(c[1])));
+
+        //Forward edges are still fine.
+        assertTrue(tryEdge(dag, c[0], c[3]));
+    }
+
+    @Test
+    public void joiningTwoChainsReordersThem(){
+        DAG dag = new DAG();
+        V[] x = chain(dag, "x", 3);
+        V[] a = chain(dag, "a", 3);
+
+        //a was added after x, so this edge goes against the order both chains were given.
+        assertTrue(tryEdge(dag, a[2], x[0]));
+
+        assertFalse(tryEdge(dag, x[2], a[0]));
+        assertFalse(tryEdge(dag, x[0], a[1]));
+        assertTrue(tryEdge(dag, a[0], x[2]));
+
+        //A third chain joined in the middle of both.
+        V[] m = chain(dag, "m", 2);
+        assertTrue(tryEdge(dag, x[1], m[0]));
+        assertTrue(tryEdge(dag, m[1], x[2]));
+        assertFalse(tryEdge(dag, m[1], a[0]));
+        assertFalse(tryEdge(dag, x[2], m[0]));
+    }
+
+    @Test
+    public void orderHoldsAfterRemoveNodesAndAddSubtree(){
+        DAG dag = new DAG();
+        V[] c = chain(dag, "c", 5);
+        dag.removeNodes(List.of(c[1], c[2]));
+
+        //c0 and c3 aren't connected any more, so either direction works, once.
+        assertTrue(tryEdge(dag, c[4], c[0]));
+        assertFalse(tryEdge(dag, c[0], c[3]));
+
+        V top = new V("top");
+        V left = new V("left");
+        V right = new V("right");
+        V bottom = new V("bottom");
+        dag.addSubtree(c[0], Subtree.builder(top).add(top, left).add(top, right).add(left, bottom).add(right, bottom).build());
+
+        assertFalse(tryEdge(dag, bottom, top));
+        assertFalse(tryEdge(dag, bottom, c[3]));
+        assertTrue(tryEdge(dag, left, right));
+        assertFalse(tryEdge(dag, bottom, left));
+        assertFalse(tryEdge(dag, right, left));
+
+        //A subtree hung from nothing, then joined above everything else.
+        V lone = new V("lone");
+        V loneChild = new V("loneChild");
+        dag.addSubtree(null, Subtree.builder(lone).add(lone, loneChild).build());
+        assertTrue(tryEdge(dag, loneChild, c[3]));
+        assertFalse(tryEdge(dag, bottom, lone));
+        assertTrue(tryEdge(dag, lone, top));
+        assertFalse(tryEdge(dag, bottom, loneChild));
+    }
+
+    private static boolean reaches(Map<V, Set<V>> children, V from, V to){
+        Set<V> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<V> stack = new ArrayDeque<>();
+        stack.push(from);
+        while (!stack.isEmpty()) {
+            V current = stack.pop();
+            if (current == to) return true;
+            if (!seen.add(current)) continue;
+            stack.addAll(children.get(current));
+        }
+        return false;
+    }
+
+    private static void addToModel(Map<V, Set<V>> children, V node){
+        children.putIfAbsent(node, Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    @Test
+    public void randomEditsMatchADepthFirstCheck(){
+        Random random = new Random(21);
+        DAG dag = new DAG();
+        Map<V, Set<V>> children = new IdentityHashMap<>();
+        List<V> live = new ArrayList<>();
+        int made = 0;
+
+        for (int step = 0; step < 5_000; step++) {
+            int op = random.nextInt(20);
+            if (op == 0 && live.size() > 4) {
+                List<V> removing = new ArrayList<>();
+                for (int i = random.nextInt(3) + 1; i > 0; i--) {
+                    removing.add(live.remove(random.nextInt(live.size())));
+                }
+                dag.removeNodes(removing);
+                for (V gone : removing) children.remove(gone);
+                for (Set<V> kids : children.values()) kids.removeAll(removing);
+            } else if (op == 1 || live.size() < 2) {
+                V root = new V("n" + made++);
+                Subtree.Builder builder = Subtree.builder(root);
+                List<V> added = new ArrayList<>(List.of(root));
+                addToModel(children, root);
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    V child = new V("n" + made++);
+                    V parent = added.get(random.nextInt(added.size()));
+                    builder.add(parent, child);
+                    addToModel(children, child);
+                    children.get(parent).add(child);
+                    added.add(child);
+                }
+                V parent = live.isEmpty() || random.nextBoolean() ? null : live.get(random.nextInt(live.size()));
+                dag.addSubtree(parent, builder.build());
+                if (parent != null) children.get(parent).add(root);
+                live.addAll(added);
+            } else if (op == 2) {
+                V node = new V("n" + made++);
+                dag.addNode(node);
+                addToModel(children, node);
+                live.add(node);
+            } else {
+                V from = live.get(random.nextInt(live.size()));
+                V to = live.get(random.nextInt(live.size()));
+                boolean cycle = reaches(children, to, from);
+                boolean added = tryEdge(dag, from, to);
+                if (added == cycle) {
+                    fail("step " + step + ": " + from + " -> " + to + (cycle ? " closes a cycle but was added" : " was refused"));
+                }
+                if (added) children.get(from).add(to);
+            }
+        }
+
+        for (V node : live) {
+            assertEquals(children.get(node).size(), dag.getChildren(node).size());
+        }
+    }
+}
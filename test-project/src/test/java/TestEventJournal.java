@@ -0,0 +1,146 @@
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.component_architecture.BackPressurePolicy;
+import org.treepluginframework.component_architecture.TPFEventDispatcher;
+import org.treepluginframework.events.IEvent;
+import org.treepluginframework.journal.EventJournal;
+import org.treepluginframework.journal.JournalReader;
+import org.treepluginframework.journal.JournalRecord;
+import org.treepluginframework.journal.JournalReplayer;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestEventJournal {
+    public static class MarkEvent extends IEvent {
+        public int value;
+
+        public MarkEvent(){
+        }
+
+        public MarkEvent(int value){
+            this.value = value;
+        }
+    }
+
+    public static class Marker {
+        int marks;
+
+        @EventSubscription
+        public void onMark(MarkEvent event){
+            marks++;
+            //Handlers changing the event after it was recorded shouldn't change what got recorded.
+            event.value = 99;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsTheOriginByIdAndTheEventAsEmitted() throws Exception {
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Marker first = new Marker();
+        Marker second = new Marker();
+        dispatcher.register(null, first, false);
+        dispatcher.register(null, second, false);
+
+        Path directory = folder.newFolder("journal").toPath();
+        try (EventJournal journal = new EventJournal(directory)) {
+            dispatcher.setJournal(journal);
+            dispatcher.emit(second, new MarkEvent(1));
+            dispatcher.setJournal(null);
+        }
+
+        List<JournalRecord> records = new JournalReader(directory).readAll();
+        assertEquals(1, records.size());
+        assertSame(second, dispatcher.getNode(records.get(0).originId()));
+        MarkEvent recorded = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .readValue(records.get(0).eventJson(), MarkEvent.class);
+        assertEquals(1, recorded.value);
+    }
+
+    @Test
+    public void replaysToTheSameComponentWhenSeveralShareAClass() throws Exception {
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Marker first = new Marker();
+        Marker second = new Marker();
+        dispatcher.register(null, first, false);
+        dispatcher.register(null, second, false);
+
+        Path directory = folder.newFolder("replay").toPath();
+        try (EventJournal journal = new EventJournal(directory)) {
+            dispatcher.setJournal(journal);
+            dispatcher.emit(second, new MarkEvent(1));
+            dispatcher.setJournal(null);
+        }
+
+        JournalReplayer replayer = new JournalReplayer(dispatcher);
+        assertEquals(1, replayer.replay(directory, false));
+        assertEquals(0, first.marks);
+        assertEquals(2, second.marks);
+    }
+
+    @Test
+    public void fullQueueLosesCountedRecords() throws Exception {
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Marker marker = new Marker();
+        dispatcher.register(null, marker, false);
+
+        int emits = 20_000;
+        EventJournal journal = new EventJournal(folder.newFolder("reject").toPath(), EventJournal.DEFAULT_SEGMENT_SIZE, 1, BackPressurePolicy.REJECT);
+        dispatcher.setJournal(journal);
+        for (int i = 0; i < emits; i++) {
+            dispatcher.emit(marker, new MarkEvent(i));
+        }
+        journal.close();
+
+        assertEquals(emits, journal.getWrittenRecords() + journal.getDroppedRecords() + journal.getFailedRecords());
+        assertEquals(0, journal.getFailedRecords());
+    }
+
+    @Test
+    public void dropOldestLosesCountedRecords() throws Exception {
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Marker marker = new Marker();
+        dispatcher.register(null, marker, false);
+
+        int emits = 20_000;
+        EventJournal journal = new EventJournal(folder.newFolder("dropOldest").toPath(), EventJournal.DEFAULT_SEGMENT_SIZE, 1, BackPressurePolicy.DROP_OLDEST);
+        dispatcher.setJournal(journal);
+        for (int i = 0; i < emits; i++) {
+            dispatcher.emit(marker, new MarkEvent(i));
+        }
+        journal.close();
+
+        assertEquals(emits, journal.getWrittenRecords() + journal.getDroppedRecords());
+        assertEquals(0, journal.getFailedRecords());
+    }
+
+    @Test
+    public void blockKeepsEveryRecord() throws Exception {
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Marker marker = new Marker();
+        dispatcher.register(null, marker, false);
+
+        int emits = 20_000;
+        Path directory = folder.newFolder("block").toPath();
+        EventJournal journal = new EventJournal(directory, EventJournal.DEFAULT_SEGMENT_SIZE, 4, BackPressurePolicy.BLOCK);
+        dispatcher.setJournal(journal);
+        for (int i = 0; i < emits; i++) {
+            dispatcher.emit(marker, new MarkEvent(i));
+        }
+        journal.close();
+
+        assertEquals(emits, journal.getWrittenRecords());
+        assertEquals(0, journal.getDroppedRecords());
+        assertEquals(emits, new JournalReader(directory).readAll().size());
+    }
+}
@@ -0,0 +1,131 @@
+import org.junit.Test;
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.annotations.TPFNode;
+import org.treepluginframework.component_architecture.DeliveryMode;
+import org.treepluginframework.component_architecture.TPFEventDispatcher;
+import org.treepluginframework.events.IEvent;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestExactlyOnce {
+    public static class PingEvent extends IEvent {
+        final Object key;
+
+        public PingEvent(Object key){
+            this.key = key;
+        }
+
+        @Override
+        public Object routingKey(){
+            return key;
+        }
+    }
+
+    public static class Counter {
+        final AtomicInteger pings = new AtomicInteger();
+
+        @EventSubscription
+        public void onPing(PingEvent event){
+            pings.incrementAndGet();
+        }
+    }
+
+    @TPFNode(parallelChildren = true)
+    public static class Fork {
+    }
+
+    public static class Holder {
+    }
+
+    /***
+     *          root
+     *        /   |   \
+     *     fork  keyed  \
+     *     /  \    |(key)\
+     *    a    b   c      |
+     *     \       |      |
+     *      +--- shared --+
+     *             |
+     *           below
+     */
+    private static final class Diamond {
+        final TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        final Holder root = new Holder();
+        final Counter a = new Counter();
+        final Counter b = new Counter();
+        final Counter c = new Counter();
+        final Counter shared = new Counter();
+        final Counter below = new Counter();
+
+        Diamond(DeliveryMode mode){
+            dispatcher.setDeliveryMode(mode);
+            Fork fork = new Fork();
+            Holder keyed = new Holder();
+            dispatcher.register(null, root, false);
+            dispatcher.register(root, fork, false);
+            dispatcher.register(root, keyed, false);
+            dispatcher.register(fork, a, false);
+            dispatcher.register(fork, b, false);
+            dispatcher.register(keyed, c, "c");
+            dispatcher.register(a, shared, false);
+            dispatcher.register(c, shared, false);
+            dispatcher.register(root, shared, false);
+            dispatcher.register(shared, below, false);
+        }
+
+        List<Integer> counts(){
+            return List.of(a.pings.get(), b.pings.get(), c.pings.get(), shared.pings.get(), below.pings.get());
+        }
+    }
+
+    @Test
+    public void perPathDeliversOncePerPath(){
+        Diamond diamond = new Diamond(DeliveryMode.PER_PATH);
+        diamond.dispatcher.emit(diamond.root, new PingEvent(null));
+        assertEquals(List.of(1, 1, 1, 3, 3), diamond.counts());
+    }
+
+    @Test
+    public void exactlyOnceAcrossParallelAndKeyedPaths(){
+        Diamond diamond = new Diamond(DeliveryMode.EXACTLY_ONCE);
+        diamond.dispatcher.emit(diamond.root, new PingEvent(null));
+        assertEquals(List.of(1, 1, 1, 1, 1), diamond.counts());
+
+        //Every emit starts over.
+        diamond.dispatcher.emit(diamond.root, new PingEvent("c"));
+        assertEquals(List.of(2, 2, 2, 2, 2), diamond.counts());
+
+        //Keyed to nobody, shared is still reachable the other two ways.
+        diamond.dispatcher.emit(diamond.root, new PingEvent("nobody"));
+        assertEquals(List.of(3, 3, 2, 3, 3), diamond.counts());
+    }
+
+    @Test
+    public void exactlyOnceForEveryEventInABatch(){
+        Diamond diamond = new Diamond(DeliveryMode.EXACTLY_ONCE);
+        diamond.dispatcher.emitAll(diamond.root, List.of(new PingEvent(null), new PingEvent("c"), new PingEvent(null)));
+        assertEquals(List.of(3, 3, 3, 3, 3), diamond.counts());
+    }
+
+    @Test
+    public void sharedNodeInsideOneKeyedChild(){
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        dispatcher.setDeliveryMode(DeliveryMode.EXACTLY_ONCE);
+        Holder root = new Holder();
+        Holder left = new Holder();
+        Holder right = new Holder();
+        Counter shared = new Counter();
+        dispatcher.register(null, root, false);
+        dispatcher.register(root, left, "k");
+        dispatcher.register(root, right, "k");
+        dispatcher.register(left, shared, false);
+        dispatcher.register(right, shared, false);
+
+        dispatcher.emit(root, new PingEvent("k"));
+
+        assertEquals(1, shared.pings.get());
+    }
+}
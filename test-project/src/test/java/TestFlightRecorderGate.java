@@ -0,0 +1,35 @@
+import jdk.jfr.Recording;
+import org.junit.Test;
+import org.treepluginframework.jfr.TPFDispatchEvent;
+import org.treepluginframework.jfr.TPFFieldInjectionEvent;
+import org.treepluginframework.jfr.TPFFlightRecorder;
+import org.treepluginframework.jfr.TPFHandlerEvent;
+import org.treepluginframework.jfr.TPFNodeConstructionEvent;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestFlightRecorderGate {
+    @Test
+    public void onlyEnabledEventsAreBuiltAndNothingAfterTheRecordingStops(){
+        assertFalse(TPFFlightRecorder.handlerEnabled());
+
+        try (Recording recording = new Recording()) {
+            //Events a recording doesn't mention are on by default.
+            recording.enable(TPFHandlerEvent.class);
+            recording.disable(TPFDispatchEvent.class);
+            recording.disable(TPFNodeConstructionEvent.class);
+            recording.disable(TPFFieldInjectionEvent.class);
+            recording.start();
+            assertTrue(TPFFlightRecorder.handlerEnabled());
+            assertFalse(TPFFlightRecorder.dispatchEnabled());
+            assertFalse(TPFFlightRecorder.nodeConstructionEnabled());
+            assertFalse(TPFFlightRecorder.fieldInjectionEnabled());
+            recording.stop();
+        }
+
+        //JFR stays initialized for the rest of the JVM, that alone mustn't turn anything on.
+        assertFalse(TPFFlightRecorder.handlerEnabled());
+        assertFalse(TPFFlightRecorder.dispatchEnabled());
+    }
+}
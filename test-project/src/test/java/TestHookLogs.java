@@ -0,0 +1,104 @@
+import org.junit.Test;
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.component_architecture.TPFEventDispatcher;
+import org.treepluginframework.component_architecture.TPFNodeIds;
+import org.treepluginframework.events.IEvent;
+import org.treepluginframework.hooks.TPFEventCompletionLog;
+import org.treepluginframework.hooks.TPFEventLog;
+import org.treepluginframework.hooks.TPFEventPropagationLog;
+import org.treepluginframework.hooks.TPFHookBus;
+import org.treepluginframework.hooks.dag.TPFDAGAdditionLog;
+import org.treepluginframework.hooks.dag.TPFDAGDeletionLog;
+import org.treepluginframework.hooks.dag.TPFDAGEdgeAdditionLog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestHookLogs {
+    public static class PingEvent extends IEvent {
+    }
+
+    public static class Pinged {
+        @EventSubscription
+        public void onPing(PingEvent event){
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void oldUUIDFieldsMatchTheIds(){
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        TPFNodeIds ids = dispatcher.getNodeIds();
+        TPFHookBus hooks = new TPFHookBus();
+        List<TPFEventLog> logs = new ArrayList<>();
+        hooks.addSink(TPFDAGAdditionLog.class, logs::add);
+        hooks.addSink(TPFDAGEdgeAdditionLog.class, logs::add);
+        hooks.addSink(TPFDAGDeletionLog.class, logs::add);
+        hooks.addSink(TPFEventPropagationLog.class, logs::add);
+        dispatcher.setHooks(hooks);
+
+        Pinged parent = new Pinged();
+        Pinged child = new Pinged();
+        dispatcher.register(null, parent, false);
+        dispatcher.register(parent, child, false);
+        dispatcher.emit(parent, new PingEvent());
+        long childId = ((TPFDAGAdditionLog) logs.get(1)).dagId;
+        dispatcher.unregister(child);
+
+        int checked = 0;
+        for (TPFEventLog log : logs) {
+            if (log instanceof TPFDAGAdditionLog addition) {
+                assertEquals(ids.toUUID(addition.dagId), addition.dagUUID);
+            } else if (log instanceof TPFDAGEdgeAdditionLog edge) {
+                assertEquals(ids.toUUID(edge.parentId), edge.parentUUID);
+                assertEquals(ids.toUUID(edge.childId), edge.childUUID);
+            } else if (log instanceof TPFDAGDeletionLog deletion) {
+                assertEquals(childId, deletion.dagId);
+                assertEquals(ids.toUUID(childId), deletion.dagUUID);
+            } else if (log instanceof TPFEventPropagationLog propagation) {
+                if (propagation.originObjectId == TPFNodeIds.NONE) assertNull(propagation.originObjectUUID);
+                else assertEquals(ids.toUUID(propagation.originObjectId), propagation.originObjectUUID);
+                assertEquals(ids.toUUID(propagation.currentObjectId), propagation.currentObjectUUID);
+            }
+            checked++;
+        }
+        //Two additions, one edge, two propagations, one deletion.
+        assertEquals(6, checked);
+    }
+
+    @Test
+    public void pollSeesEveryLogPublishedWhileItRuns() throws InterruptedException {
+        int threads = 4;
+        int perThread = 20_000;
+        TPFHookBus hooks = new TPFHookBus(threads * perThread);
+        hooks.setRecording(true);
+
+        Thread[] publishers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            publishers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    hooks.publish(new TPFEventCompletionLog());
+                }
+            });
+            publishers[t].start();
+        }
+
+        int[] seen = new int[threads * perThread + 1];
+        long next = 1;
+        boolean publishing = true;
+        while (publishing) {
+            publishing = false;
+            for (Thread publisher : publishers) publishing |= publisher.isAlive();
+            next = hooks.poll(next, log -> seen[(int) log.getSequence()]++);
+        }
+        next = hooks.poll(next, log -> seen[(int) log.getSequence()]++);
+
+        assertEquals(threads * perThread + 1, next);
+        for (int sequence = 1; sequence < seen.length; sequence++) {
+            assertEquals("log " + sequence, 1, seen[sequence]);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import org.junit.Test;
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.component_architecture.TPFEventDispatcher;
+import org.treepluginframework.events.IEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestKeyedRouting {
+    public static class PlayerEvent extends IEvent {
+        final Object player;
+
+        public PlayerEvent(Object player){
+            this.player = player;
+        }
+
+        @Override
+        public Object routingKey(){
+            return player;
+        }
+    }
+
+    static final List<String> order = new ArrayList<>();
+
+    public static class Named {
+        final String name;
+
+        public Named(String name){
+            this.name = name;
+        }
+
+        @EventSubscription
+        public void onPlayer(PlayerEvent event){
+            order.add(name);
+        }
+    }
+
+    public static class Holder {
+    }
+
+    @Test
+    public void onlyTheMatchingChildGetsIt(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Holder server = new Holder();
+        Named alice = new Named("alice");
+        dispatcher.register(null, server, false);
+        dispatcher.register(server, alice, "alice");
+        dispatcher.register(server, new Named("bob"), "bob");
+        dispatcher.register(alice, new Named("aliceInventory"), false);
+        dispatcher.register(server, new Named("logger"), false);
+
+        dispatcher.emit(server, new PlayerEvent("alice"));
+
+        //Unkeyed children always get it, keyed ones come after them.
+        assertEquals(List.of("logger", "alice", "aliceInventory"), order);
+    }
+
+    @Test
+    public void noKeyGoesToEveryKeyedChild(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Holder server = new Holder();
+        dispatcher.register(null, server, false);
+        dispatcher.register(server, new Named("alice"), "alice");
+        dispatcher.register(server, new Named("bob"), "bob");
+
+        dispatcher.emit(server, new PlayerEvent(null));
+
+        //No order between different keys.
+        assertEquals(Set.of("alice", "bob"), Set.copyOf(order));
+        assertEquals(2, order.size());
+    }
+
+    @Test
+    public void unknownKeyGoesToNobody(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Holder server = new Holder();
+        dispatcher.register(null, server, false);
+        dispatcher.register(server, new Named("alice"), "alice");
+
+        dispatcher.emit(server, new PlayerEvent("carol"));
+
+        assertEquals(List.of(), order);
+    }
+
+    @Test
+    public void sharedKeyAndUnregister(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Holder server = new Holder();
+        Named first = new Named("first");
+        dispatcher.register(null, server, false);
+        dispatcher.register(server, first, "team");
+        dispatcher.register(server, new Named("second"), "team");
+
+        dispatcher.emit(server, new PlayerEvent("team"));
+        assertEquals(List.of("first", "second"), order);
+
+        order.clear();
+        dispatcher.unregister(first);
+        dispatcher.emit(server, new PlayerEvent("team"));
+        assertEquals(List.of("second"), order);
+    }
+
+    @Test
+    public void keyedChildAddedByAHandlerGetsTheSameEvent(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Holder server = new Holder();
+        dispatcher.register(null, server, false);
+        Spawner spawner = new Spawner(dispatcher, server);
+        dispatcher.register(server, spawner, "team");
+
+        dispatcher.emit(server, new PlayerEvent("team"));
+
+        assertEquals(List.of("spawner", "spawned"), order);
+    }
+
+    public static class Spawner {
+        final TPFEventDispatcher dispatcher;
+        final Object parent;
+
+        public Spawner(TPFEventDispatcher dispatcher, Object parent){
+            this.dispatcher = dispatcher;
+            this.parent = parent;
+        }
+
+        @EventSubscription
+        public void onPlayer(PlayerEvent event){
+            order.add("spawner");
+            dispatcher.register(parent, new Named("spawned"), "team");
+        }
+    }
+}
@@ -0,0 +1,207 @@
+import org.junit.Test;
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.annotations.TPFNode;
+import org.treepluginframework.component_architecture.TPFEventDispatcher;
+import org.treepluginframework.events.IEvent;
+import org.treepluginframework.hooks.TPFEventPropagationLog;
+import org.treepluginframework.hooks.TPFHookBus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestParallelChildren {
+    public static class PingEvent extends IEvent {
+    }
+
+    public static class FollowUpEvent extends IEvent {
+    }
+
+    static final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    @TPFNode(parallelChildren = true)
+    public static class Fork {
+        @EventSubscription
+        public void onPing(PingEvent event){
+            order.add("fork");
+        }
+    }
+
+    public static class Named {
+        final String name;
+
+        public Named(String name){
+            this.name = name;
+        }
+    }
+
+    public static class High extends Named {
+        public High(String name){
+            super(name);
+        }
+
+        @EventSubscription(priority = 10)
+        public void onPing(PingEvent event){
+            order.add(name);
+        }
+    }
+
+    public static class Low extends Named {
+        public Low(String name){
+            super(name);
+        }
+
+        @EventSubscription(priority = 1)
+        public void onPing(PingEvent event){
+            order.add(name);
+        }
+    }
+
+    public static class Plain extends Named {
+        public Plain(String name){
+            super(name);
+        }
+
+        @EventSubscription
+        public void onPing(PingEvent event){
+            order.add(name);
+        }
+    }
+
+    public static class Thrower {
+        @EventSubscription(priority = 10)
+        public void onPing(PingEvent event){
+            throw new IllegalStateException("child failed");
+        }
+    }
+
+    public static class Emitter {
+        TPFEventDispatcher dispatcher;
+        volatile Thread followUpThread;
+        volatile boolean followUpBeforeDone;
+
+        @EventSubscription(priority = 10)
+        public void onPing(PingEvent event){
+            dispatcher.emit(this, new FollowUpEvent());
+            order.add("emitter");
+        }
+
+        @EventSubscription
+        public void onFollowUp(FollowUpEvent event){
+            followUpThread = Thread.currentThread();
+            followUpBeforeDone = !order.contains("after");
+            order.add("followUp");
+        }
+    }
+
+    public static class Holder {
+    }
+
+    @Test
+    public void bandsRunInPriorityOrder(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Holder root = new Holder();
+        Fork fork = new Fork();
+        dispatcher.register(null, root, false);
+        dispatcher.register(root, fork, false);
+        dispatcher.register(root, new Plain("after"), false);
+        dispatcher.register(fork, new Low("low"), false);
+        dispatcher.register(fork, new High("high1"), false);
+        dispatcher.register(fork, new High("high2"), false);
+        Holder middle = new Holder();
+        dispatcher.register(fork, middle, false);
+        dispatcher.register(middle, new Plain("deep"), false);
+
+        dispatcher.emit(root, new PingEvent());
+
+        assertEquals(List.of("fork"), order.subList(0, 1));
+        assertEquals(Set.of("high1", "high2"), Set.copyOf(order.subList(1, 3)));
+        assertEquals(List.of("low", "deep", "after"), order.subList(3, 6));
+    }
+
+    @Test
+    public void childExceptionComesOutOfEmit(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Fork fork = new Fork();
+        dispatcher.register(null, fork, false);
+        Thrower thrower = new Thrower();
+        dispatcher.register(fork, thrower, false);
+        dispatcher.register(fork, new High("high"), false);
+        dispatcher.register(fork, new Low("low"), false);
+
+        try {
+            dispatcher.emit(fork, new PingEvent());
+            fail("Expected the child's exception");
+        } catch (RuntimeException e) {
+            //ForkJoin can rethrow a copy from the joining thread, with the original as its cause.
+            Throwable cause = e;
+            while (!"child failed".equals(cause.getMessage()) && cause.getCause() != null) cause = cause.getCause();
+            assertTrue(cause instanceof IllegalStateException);
+            assertEquals("child failed", cause.getMessage());
+        }
+        assertFalse("No band after the failing one runs", order.contains("low"));
+
+        //The section was unwound, so unregistering goes in right away instead of being deferred.
+        order.clear();
+        dispatcher.unregister(thrower);
+        dispatcher.emit(fork, new PingEvent());
+        assertEquals(List.of("fork", "high", "low"), order);
+    }
+
+    @Test
+    public void emitsFromChildrenRunOnTheDispatchingThreadAfterTheSection(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Holder root = new Holder();
+        Fork fork = new Fork();
+        Emitter emitter = new Emitter();
+        emitter.dispatcher = dispatcher;
+        dispatcher.register(null, root, false);
+        dispatcher.register(root, fork, false);
+        dispatcher.register(root, new Plain("after"), false);
+        dispatcher.register(fork, emitter, false);
+        dispatcher.register(fork, new High("high"), false);
+
+        dispatcher.emit(root, new PingEvent());
+
+        assertSame(Thread.currentThread(), emitter.followUpThread);
+        assertTrue("Follow up runs once the section is done, before the rest of the walk", emitter.followUpBeforeDone);
+        assertTrue(order.indexOf("followUp") > order.indexOf("emitter"));
+        assertTrue(order.indexOf("followUp") > order.indexOf("high"));
+    }
+
+    @Test
+    public void propagationLogsCoverParallelChildren(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        TPFHookBus hooks = new TPFHookBus();
+        Set<Object> logged = ConcurrentHashMap.newKeySet();
+        hooks.addSink(TPFEventPropagationLog.class, log -> logged.add(dispatcher.getNode(((TPFEventPropagationLog) log).currentObjectId)));
+        dispatcher.setHooks(hooks);
+
+        Fork fork = new Fork();
+        High high1 = new High("high1");
+        High high2 = new High("high2");
+        Holder middle = new Holder();
+        Plain deep = new Plain("deep");
+        dispatcher.register(null, fork, false);
+        dispatcher.register(fork, high1, false);
+        dispatcher.register(fork, high2, false);
+        dispatcher.register(fork, middle, false);
+        dispatcher.register(middle, deep, false);
+
+        dispatcher.emit(fork, new PingEvent());
+
+        assertEquals(Set.of(fork, high1, high2, deep), logged);
+    }
+}
@@ -0,0 +1,130 @@
+import org.junit.Test;
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.component_architecture.Retention;
+import org.treepluginframework.component_architecture.Subtree;
+import org.treepluginframework.component_architecture.TPFEventDispatcher;
+import org.treepluginframework.events.IEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TestSubtreeRegistration {
+    public static class PingEvent extends IEvent {
+    }
+
+    static final List<String> order = new ArrayList<>();
+
+    public static class Named {
+        final String name;
+
+        public Named(String name){
+            this.name = name;
+        }
+
+        @EventSubscription
+        public void onPing(PingEvent event){
+            order.add(name);
+        }
+
+        @Override
+        public String toString(){
+            return name;
+        }
+    }
+
+    private static void assertRefused(TPFEventDispatcher dispatcher, Object parent, Subtree subtree, Retention retention){
+        try {
+            dispatcher.registerSubtree(parent, subtree, retention);
+            fail("registering " + subtree.getRoot() + " under " + parent + " should have been refused");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static List<String> ping(TPFEventDispatcher dispatcher, Object from){
+        order.clear();
+        dispatcher.emit(from, new PingEvent());
+        return List.copyOf(order);
+    }
+
+    @Test
+    public void refusedSubtreeLeavesNothingBehind(){
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Named top = new Named("top");
+        Named middle = new Named("middle");
+        dispatcher.register(null, top, false);
+        dispatcher.register(top, middle, false);
+        assertEquals(List.of("top", "middle"), ping(dispatcher, top));
+
+        Named a = new Named("a");
+        Named b = new Named("b");
+        //middle under something that ends up under middle.
+        Subtree loop = Subtree.builder(a).add(a, b).add(b, middle).build();
+        assertRefused(dispatcher, middle, loop, Retention.STRONG);
+        assertRefused(dispatcher, middle, loop, Retention.WEAK);
+        //top is already registered, and is above middle, so it would close a cycle too.
+        assertRefused(dispatcher, middle, Subtree.builder(a).add(a, top).build(), Retention.STRONG);
+
+        assertEquals(List.of("top", "middle"), ping(dispatcher, top));
+
+        //None of a and b went in, so they can be registered now.
+        Named c = new Named("c");
+        dispatcher.registerSubtree(middle, Subtree.builder(a).add(a, b).add(b, c).build(), Retention.WEAK);
+        assertEquals(List.of("top", "middle", "a", "b", "c"), ping(dispatcher, top));
+    }
+
+    @Test
+    public void sharedChildWithAnOutsideParentIsKept(){
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Named top = new Named("top");
+        Named outside = new Named("outside");
+        Named root = new Named("root");
+        Named own = new Named("own");
+        Named shared = new Named("shared");
+        Named belowShared = new Named("belowShared");
+        dispatcher.register(null, top, false);
+        dispatcher.register(top, outside, false);
+        dispatcher.registerSubtree(top, Subtree.builder(root).add(root, own).add(root, shared).add(shared, belowShared).build());
+        dispatcher.register(outside, shared, false);
+
+        dispatcher.unregisterSubtree(root);
+
+        assertEquals(List.of("top", "outside", "shared", "belowShared"), ping(dispatcher, top));
+        assertEquals(List.of("outside", "shared", "belowShared"), ping(dispatcher, outside));
+        //root and own are gone, so registering them again is fine.
+        dispatcher.register(top, root, false);
+        dispatcher.register(root, own, false);
+        assertEquals(List.of("root", "own"), ping(dispatcher, root));
+    }
+
+    @Test
+    public void cachedPlansFollowBulkChanges(){
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Named top = new Named("top");
+        Named middle = new Named("middle");
+        dispatcher.register(null, top, false);
+        dispatcher.register(top, middle, false);
+        assertEquals(List.of("top", "middle"), ping(dispatcher, top));
+
+        //Under middle, so the plan cached at top has to be thrown out from below.
+        Named a = new Named("a");
+        Named b = new Named("b");
+        Named c = new Named("c");
+        dispatcher.registerSubtree(middle, Subtree.builder(a).add(a, b).add(b, c).build());
+        assertEquals(List.of("top", "middle", "a", "b", "c"), ping(dispatcher, top));
+        assertEquals(List.of("b", "c"), ping(dispatcher, b));
+
+        dispatcher.unregisterSubtree(a);
+        assertEquals(List.of("top", "middle"), ping(dispatcher, top));
+
+        //Same components, another shape. The plan that was cached at b can't come back.
+        dispatcher.registerSubtree(top, Subtree.builder(b).add(b, a).build());
+        assertEquals(List.of("b", "a"), ping(dispatcher, b));
+        assertEquals(List.of("top", "middle", "b", "a"), ping(dispatcher, top));
+        //c went with the old subtree, so it can go back in anywhere.
+        dispatcher.register(a, c, false);
+        assertEquals(List.of("b", "a", "c"), ping(dispatcher, b));
+    }
+}
@@ -0,0 +1,155 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.component_architecture.TPFEventDispatcher;
+import org.treepluginframework.component_architecture.TickScheduler;
+import org.treepluginframework.events.EventDirection;
+import org.treepluginframework.events.IEvent;
+import org.treepluginframework.events.NativeEventAdapter;
+import org.treepluginframework.journal.EventJournal;
+import org.treepluginframework.journal.JournalReader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestTickDeferral {
+    public static class TickEvent extends IEvent {
+        final int tick;
+
+        public TickEvent(int tick){
+            this.tick = tick;
+        }
+    }
+
+    //Climbs to the closest Holder, then goes down from there.
+    public static class UpTickEvent extends TickEvent {
+        public UpTickEvent(int tick){
+            super(tick);
+        }
+
+        @Override
+        public EventDirection getDirection(){
+            return EventDirection.UP;
+        }
+
+        @Override
+        public Class<?> getEndPoint(){
+            return Holder.class;
+        }
+    }
+
+    //Blows the whole budget on the first tick only.
+    public static class Slow {
+        @EventSubscription(priority = 10, useSuperClasses = true)
+        public void onTick(TickEvent event){
+            if (event.tick == 1) {
+                try {
+                    Thread.sleep(30);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    public static class Lazy {
+        final List<Integer> ticks = new ArrayList<>();
+
+        @EventSubscription(priority = 5, deferrable = true, useSuperClasses = true)
+        public void onTick(TickEvent event){
+            ticks.add(event.tick);
+        }
+    }
+
+    //Comes after Lazy in the walk, and stops the first tick.
+    public static class Stopper {
+        final List<Integer> ticks = new ArrayList<>();
+
+        @EventSubscription(priority = 1, useSuperClasses = true)
+        public void onTick(TickEvent event, NativeEventAdapter adapter){
+            ticks.add(event.tick);
+            if (event.tick == 1) adapter.stopPropagation();
+        }
+    }
+
+    public static class Holder {
+    }
+
+    @Test
+    public void deferredSubtreeStillRunsAfterALaterStop(){
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Holder root = new Holder();
+        Lazy lazy = new Lazy();
+        Stopper stopper = new Stopper();
+        dispatcher.register(null, root, false);
+        dispatcher.register(root, new Slow(), false);
+        dispatcher.register(root, lazy, false);
+        dispatcher.register(root, stopper, false);
+
+        AtomicInteger ticks = new AtomicInteger();
+        TickScheduler scheduler = TickScheduler.ofEvents(dispatcher, root, () -> new TickEvent(ticks.incrementAndGet()), 20, 10);
+        scheduler.setOverrunListener(null);
+
+        assertEquals(1, scheduler.tick().deferredBacklog());
+        assertEquals(List.of(), lazy.ticks);
+        assertEquals(List.of(1), stopper.ticks);
+
+        //Tick 2 runs normally, then the leftover time goes to tick 1's deferred Lazy.
+        assertEquals(0, scheduler.tick().deferredBacklog());
+        assertEquals(List.of(2, 1), lazy.ticks);
+        //The replay only covers Lazy's subtree.
+        assertEquals(List.of(1, 2), stopper.ticks);
+    }
+
+    @Test
+    public void deferredSubtreeOfAnEndpointEventOnlyGoesDown(){
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Holder root = new Holder();
+        Lazy lazy = new Lazy();
+        Stopper stopper = new Stopper();
+        dispatcher.register(null, root, false);
+        dispatcher.register(root, new Slow(), false);
+        dispatcher.register(root, lazy, false);
+        dispatcher.register(root, stopper, false);
+
+        AtomicInteger ticks = new AtomicInteger();
+        TickScheduler scheduler = TickScheduler.ofEvents(dispatcher, root, () -> new UpTickEvent(ticks.incrementAndGet()), 20, 10);
+        scheduler.setOverrunListener(null);
+
+        assertEquals(1, scheduler.tick().deferredBacklog());
+        assertEquals(0, scheduler.tick().deferredBacklog());
+        assertEquals(List.of(2, 1), lazy.ticks);
+        //Climbing again from Lazy would have run all of root a second time for tick 1.
+        assertEquals(List.of(1, 2), stopper.ticks);
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void deferredReplayIsntJournaledAgain() throws Exception {
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Holder root = new Holder();
+        Lazy lazy = new Lazy();
+        dispatcher.register(null, root, false);
+        dispatcher.register(root, new Slow(), false);
+        dispatcher.register(root, lazy, false);
+
+        AtomicInteger ticks = new AtomicInteger();
+        TickScheduler scheduler = TickScheduler.ofEvents(dispatcher, root, () -> new TickEvent(ticks.incrementAndGet()), 20, 10);
+        scheduler.setOverrunListener(null);
+        EventJournal journal = new EventJournal(folder.newFolder("ticks").toPath());
+        dispatcher.setJournal(journal);
+        scheduler.tick();
+        scheduler.tick();
+        journal.close();
+
+        assertEquals(List.of(2, 1), lazy.ticks);
+        //Replaying tick 1 already reaches Lazy, a record for the deferred run would deliver it twice.
+        assertEquals(2, new JournalReader(journal.getDirectory()).readAll().size());
+    }
+}
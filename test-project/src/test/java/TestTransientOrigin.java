@@ -0,0 +1,77 @@
+import org.junit.Test;
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.component_architecture.TPFEventDispatcher;
+import org.treepluginframework.events.EventDirection;
+import org.treepluginframework.events.IEvent;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+//Emitting from something that was never registered mustn't leave anything behind that keeps it alive.
+public class TestTransientOrigin {
+    public static class CommandEvent extends IEvent {
+    }
+
+    public static class ReportEvent extends IEvent {
+        @Override
+        public EventDirection getDirection(){
+            return EventDirection.UP;
+        }
+    }
+
+    public static class Command {
+        static int handled;
+
+        @EventSubscription
+        public void onCommand(CommandEvent event){
+            handled++;
+        }
+
+        @EventSubscription
+        public void onReport(ReportEvent event){
+            handled++;
+        }
+    }
+
+    //Its own method so nothing on the test's stack keeps the sender reachable.
+    private static WeakReference<Object> emitFromThrowaway(TPFEventDispatcher dispatcher, IEvent event){
+        Command sender = new Command();
+        dispatcher.emit(sender, event);
+        return new WeakReference<>(sender);
+    }
+
+    private static void assertCollected(WeakReference<Object> sender) throws InterruptedException {
+        for (int i = 0; i < 100 && sender.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("the dispatcher is still holding on to the sender", sender.get());
+    }
+
+    @Test
+    public void unregisteredSenderIsntKeptByThePlanCache() throws InterruptedException {
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        dispatcher.register(null, new Command(), false);
+        Command.handled = 0;
+
+        WeakReference<Object> sender = emitFromThrowaway(dispatcher, new CommandEvent());
+
+        //It still gets to handle its own event.
+        assertEquals(1, Command.handled);
+        assertCollected(sender);
+    }
+
+    @Test
+    public void unregisteredSenderIsntKeptByTheAncestorChains() throws InterruptedException {
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        dispatcher.register(null, new Command(), false);
+        Command.handled = 0;
+
+        WeakReference<Object> sender = emitFromThrowaway(dispatcher, new ReportEvent());
+
+        assertEquals(1, Command.handled);
+        assertCollected(sender);
+    }
+}
@@ -0,0 +1,151 @@
+import org.junit.Test;
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.component_architecture.TPFEventDispatcher;
+import org.treepluginframework.events.EventDirection;
+import org.treepluginframework.events.IEvent;
+import org.treepluginframework.events.NativeEventAdapter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestUpstreamDispatch {
+    public static class AlertEvent extends IEvent {
+        @Override
+        public EventDirection getDirection(){
+            return EventDirection.UP;
+        }
+    }
+
+    //Climbs to the closest Arena, then goes down from there.
+    public static class ArenaAlertEvent extends AlertEvent {
+        @Override
+        public Class<?> getEndPoint(){
+            return Arena.class;
+        }
+    }
+
+    static final List<String> order = new ArrayList<>();
+
+    public static class Named {
+        final String name;
+        boolean stop;
+
+        public Named(String name){
+            this.name = name;
+        }
+
+        @EventSubscription(useSuperClasses = true)
+        public void onAlert(AlertEvent event, NativeEventAdapter adapter){
+            order.add(name);
+            if (stop) adapter.stopPropagation();
+        }
+    }
+
+    //Handlers are looked up on the class itself, so it needs its own.
+    public static class Arena extends Named {
+        public Arena(String name){
+            super(name);
+        }
+
+        @Override
+        @EventSubscription(useSuperClasses = true)
+        public void onAlert(AlertEvent event, NativeEventAdapter adapter){
+            super.onAlert(event, adapter);
+        }
+    }
+
+    @Test
+    public void bubblesThroughEveryAncestorClosestFirst(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Named top = new Named("top");
+        Named middle = new Named("middle");
+        Named leaf = new Named("leaf");
+        dispatcher.register(null, top, false);
+        dispatcher.register(top, middle, false);
+        dispatcher.register(middle, leaf, false);
+        dispatcher.register(middle, new Named("sibling"), false);
+
+        dispatcher.emit(leaf, new AlertEvent());
+
+        assertEquals(List.of("leaf", "middle", "top"), order);
+    }
+
+    @Test
+    public void climbsThroughThePrimaryParentOnly(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Named first = new Named("first");
+        Named second = new Named("second");
+        Named shared = new Named("shared");
+        dispatcher.register(null, first, false);
+        dispatcher.register(null, second, false);
+        dispatcher.register(first, shared, false);
+        dispatcher.register(second, shared, false);
+
+        dispatcher.emit(shared, new AlertEvent());
+        assertEquals(List.of("shared", "first"), order);
+
+        //Once the first parent is gone the cached chain has to be thrown out, and the second one takes over.
+        order.clear();
+        dispatcher.unregister(first);
+        dispatcher.emit(shared, new AlertEvent());
+        assertEquals(List.of("shared", "second"), order);
+    }
+
+    @Test
+    public void stopPropagationEndsTheClimb(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Named top = new Named("top");
+        Named middle = new Named("middle");
+        Named leaf = new Named("leaf");
+        middle.stop = true;
+        dispatcher.register(null, top, false);
+        dispatcher.register(top, middle, false);
+        dispatcher.register(middle, leaf, false);
+
+        dispatcher.emit(leaf, new AlertEvent());
+
+        assertEquals(List.of("leaf", "middle"), order);
+    }
+
+    @Test
+    public void endpointClimbsThenGoesDown(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Arena outer = new Arena("outer");
+        Arena arena = new Arena("arena");
+        Named team = new Named("team");
+        Named player = new Named("player");
+        dispatcher.register(null, outer, false);
+        dispatcher.register(outer, arena, false);
+        dispatcher.register(arena, team, false);
+        dispatcher.register(team, player, false);
+        dispatcher.register(arena, new Named("spectator"), false);
+
+        dispatcher.emit(player, new ArenaAlertEvent());
+
+        assertEquals(List.of("arena", "team", "player", "spectator"), order);
+    }
+
+    @Test
+    public void endpointLeavesTheCallersAdapterGoingUp(){
+        order.clear();
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Arena arena = new Arena("arena");
+        Named player = new Named("player");
+        dispatcher.register(null, arena, false);
+        dispatcher.register(arena, player, false);
+
+        NativeEventAdapter adapter = new NativeEventAdapter(new ArenaAlertEvent());
+        dispatcher.emit(player, adapter);
+        assertEquals(EventDirection.UP, adapter.getDirection());
+
+        //Emitting it again climbs again, instead of only going down from player.
+        dispatcher.emit(player, adapter);
+        assertEquals(List.of("arena", "player", "arena", "player"), order);
+    }
+}
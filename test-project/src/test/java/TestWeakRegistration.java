@@ -0,0 +1,87 @@
+import org.junit.Test;
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.component_architecture.Retention;
+import org.treepluginframework.component_architecture.TPFEventDispatcher;
+import org.treepluginframework.events.IEvent;
+import org.treepluginframework.hooks.TPFHookBus;
+import org.treepluginframework.hooks.dag.TPFDAGAdditionLog;
+import org.treepluginframework.hooks.dag.TPFDAGDeletionLog;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TestWeakRegistration {
+    public static class PingEvent extends IEvent {
+    }
+
+    public static class Counter {
+        int pings;
+
+        @EventSubscription
+        public void onPing(PingEvent event){
+            pings++;
+        }
+    }
+
+    public static class Holder {
+    }
+
+    //Its own method so nothing on the test's stack keeps the component reachable.
+    private static WeakReference<Counter> registerForgotten(TPFEventDispatcher dispatcher, Object parent, Object strongChild){
+        Counter forgotten = new Counter();
+        dispatcher.register(parent, forgotten, Retention.WEAK);
+        dispatcher.register(forgotten, strongChild, false);
+        return new WeakReference<>(forgotten);
+    }
+
+    @Test
+    public void collectedComponentIsSweptBeforeTheNextEvent() throws InterruptedException {
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        TPFHookBus hooks = new TPFHookBus();
+        //Ids only, holding the components here would keep them alive.
+        List<Long> added = new ArrayList<>();
+        List<Long> deleted = new ArrayList<>();
+        hooks.addSink(TPFDAGAdditionLog.class, log -> added.add(((TPFDAGAdditionLog) log).dagId));
+        hooks.addSink(TPFDAGDeletionLog.class, log -> deleted.add(((TPFDAGDeletionLog) log).dagId));
+        dispatcher.setHooks(hooks);
+
+        Holder root = new Holder();
+        Counter kept = new Counter();
+        Counter strongChild = new Counter();
+        dispatcher.register(null, root, false);
+        dispatcher.register(root, kept, Retention.WEAK);
+        WeakReference<Counter> forgotten = registerForgotten(dispatcher, root, strongChild);
+        //root, kept, forgotten, strongChild
+        assertEquals(4, added.size());
+
+        dispatcher.emit(root, new PingEvent());
+        assertEquals(1, kept.pings);
+        assertEquals(1, strongChild.pings);
+
+        for (int i = 0; i < 100 && forgotten.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("the weakly registered component was never collected", forgotten.get());
+
+        //The sweep happens when the next event starts, so the forgotten node's children aren't reached from root any more.
+        dispatcher.emit(root, new PingEvent());
+        assertEquals(List.of(added.get(2)), deleted);
+        assertNull(dispatcher.getNode(added.get(2)));
+        assertEquals(2, kept.pings);
+        assertEquals(1, strongChild.pings);
+
+        //A strong child of a weak node stays, as a root of its own.
+        assertSame(strongChild, dispatcher.getNode(added.get(3)));
+        dispatcher.emit(strongChild, new PingEvent());
+        assertEquals(2, strongChild.pings);
+
+        //Still reachable, so never swept.
+        assertSame(kept, dispatcher.getNode(added.get(1)));
+    }
+}
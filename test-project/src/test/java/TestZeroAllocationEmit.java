@@ -0,0 +1,74 @@
+import org.junit.Test;
+import org.treepluginframework.annotations.EventSubscription;
+import org.treepluginframework.component_architecture.TPFEventDispatcher;
+import org.treepluginframework.events.NativeEventAdapter;
+import org.treepluginframework.events.IEvent;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestZeroAllocationEmit {
+    public static class PingEvent extends IEvent {
+    }
+
+    public static class Counter {
+        long pings;
+
+        @EventSubscription
+        public void onPing(PingEvent event){
+            pings++;
+        }
+    }
+
+    public static class PriorityCounter {
+        long pings;
+
+        @EventSubscription(priority = 5)
+        public void onPing(PingEvent event, NativeEventAdapter adapter){
+            pings++;
+        }
+    }
+
+    public static class Holder {
+    }
+
+    @Test
+    public void steadyStateEmitDoesNotAllocate(){
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        org.junit.Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        TPFEventDispatcher dispatcher = new TPFEventDispatcher(null, null, null);
+        Holder root = new Holder();
+        Counter counter = new Counter();
+        PriorityCounter priorityCounter = new PriorityCounter();
+        Holder middle = new Holder();
+        Counter deepCounter = new Counter();
+        dispatcher.register(null, root, false);
+        dispatcher.register(root, counter, false);
+        dispatcher.register(root, priorityCounter, false);
+        dispatcher.register(root, middle, false);
+        dispatcher.register(middle, deepCounter, false);
+
+        PingEvent event = new PingEvent();
+        int warmup = 200_000;
+        for (int i = 0; i < warmup; i++) {
+            dispatcher.emit(root, event);
+        }
+
+        int emits = 100_000;
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < emits; i++) {
+            dispatcher.emit(root, event);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(warmup + emits, counter.pings);
+        assertEquals(warmup + emits, priorityCounter.pings);
+        assertEquals(warmup + emits, deepCounter.pings);
+        assertTrue("Allocated " + allocated + " bytes over " + emits + " emits", (double) allocated / emits < 1.0);
+    }
+}